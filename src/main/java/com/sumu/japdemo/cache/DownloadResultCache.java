@@ -0,0 +1,195 @@
+package com.sumu.japdemo.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sumu.japdemo.entity.dto.DownloadResult;
+import com.sumu.japdemo.index.FileIndex;
+import com.sumu.japdemo.utils.BinaryWireCodec;
+import com.sumu.japdemo.utils.RawJson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 下载查询结果缓存：按哈希缓存已编码好的 download-nodes-found / download-nodes-not-found 事件内容。
+ * 同一哈希的结果只构建和序列化一次，所有请求者共享同一份只读字节，发送时原样写入数据包；
+ * 开启二进制编码时找到的结果同时保存一份 BinaryWireCodec 编码，供协商为 binary 的连接使用。
+ * 该哈希的做种节点变化或节点上下线时失效；未找到的结果另有较短的 TTL
+ */
+@Component
+public class DownloadResultCache implements FileIndex.ChangeListener {
+
+    public static final String FOUND_EVENT = "download-nodes-found";
+
+    public static final String NOT_FOUND_EVENT = "download-nodes-not-found";
+
+    @Value("${p2p.download.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${p2p.download.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${p2p.download.cache.negative-ttl-ms:2000}")
+    private long negativeTtlMs;
+
+    @Value("${p2p.wire.binary.enabled:true}")
+    private boolean binaryEnabled;
+
+    @Autowired
+    private FileIndex fileIndex;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * 每次失效前加一，用于发现未找到结果在查询期间已过期
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private Cache<String, Payload> found;
+
+    private Cache<String, Payload> notFound;
+
+    /**
+     * 编码好的事件内容
+     */
+    public static final class Payload {
+
+        private final String event;
+        private final RawJson body;
+        private final byte[] binaryBody;
+        private final int nodeCount;
+
+        private Payload(String event, RawJson body, byte[] binaryBody, int nodeCount) {
+            this.event = event;
+            this.body = body;
+            this.binaryBody = binaryBody;
+            this.nodeCount = nodeCount;
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public RawJson getBody() {
+            return body;
+        }
+
+        /**
+         * 只有找到的结果且开启二进制编码时才有，否则为 null
+         */
+        public byte[] getBinaryBody() {
+            return binaryBody;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public boolean isFound() {
+            return nodeCount > 0;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        found = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        notFound = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(negativeTtlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        fileIndex.addChangeListener(this);
+    }
+
+    /**
+     * 未命中时由 loader 查询 (返回 null 表示文件不在索引中)。同一哈希并发未命中时只有一个线程执行 loader；
+     * 构建期间发生的失效会等待构建完成后再移除结果，不会留下过期内容。
+     * 哈希为空时不查询也不缓存 (Caffeine 不接受 null 键)，直接返回未找到
+     */
+    public Payload get(String fileHash, Function<String, DownloadResult> loader) {
+        if (fileHash == null || fileHash.trim().isEmpty()) {
+            return encode(fileHash, null);
+        }
+        if (!enabled) {
+            return encode(fileHash, loader.apply(fileHash));
+        }
+        Payload payload = notFound.getIfPresent(fileHash);
+        if (payload != null) {
+            return payload;
+        }
+        long generation = invalidations.get();
+        Payload[] missing = new Payload[1];
+        payload = found.get(fileHash, hash -> {
+            Payload built = encode(hash, loader.apply(hash));
+            if (built.isFound()) {
+                return built;
+            }
+            missing[0] = built;
+            return null;
+        });
+        if (payload != null) {
+            return payload;
+        }
+        notFound.put(fileHash, missing[0]);
+        if (invalidations.get() != generation) {
+            notFound.asMap().remove(fileHash, missing[0]);
+        }
+        return missing[0];
+    }
+
+    @Override
+    public void onSeedersChanged(String fileHash) {
+        invalidations.incrementAndGet();
+        found.invalidate(fileHash);
+        notFound.invalidate(fileHash);
+    }
+
+    public void invalidateAll() {
+        found.invalidateAll();
+        notFound.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats foundStats = found.stats();
+        CacheStats notFoundStats = notFound.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", found.estimatedSize());
+        result.put("hitCount", foundStats.hitCount());
+        result.put("missCount", foundStats.missCount());
+        result.put("hitRate", foundStats.hitRate());
+        result.put("negativeSize", notFound.estimatedSize());
+        result.put("negativeHitCount", notFoundStats.hitCount());
+        result.put("invalidationCount", invalidations.get());
+        return result;
+    }
+
+    private Payload encode(String fileHash, DownloadResult result) {
+        try {
+            if (result != null && result.getNodeCount() > 0) {
+                return new Payload(FOUND_EVENT, new RawJson(objectMapper.writeValueAsBytes(result)),
+                        binaryEnabled ? BinaryWireCodec.encodeDownloadResult(result) : null, result.getNodeCount());
+            }
+            Map<String, String> error = new HashMap<>();
+            error.put("fileHash", fileHash);
+            error.put("error", result == null ? "文件未在索引中找到" : "没有节点拥有该文件");
+            return new Payload(NOT_FOUND_EVENT, new RawJson(objectMapper.writeValueAsBytes(error)), null, 0);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("下载结果序列化失败: " + fileHash, e);
+        }
+    }
+}
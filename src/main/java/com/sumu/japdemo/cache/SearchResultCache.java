@@ -0,0 +1,165 @@
+package com.sumu.japdemo.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sumu.japdemo.entity.dto.SearchPage;
+import com.sumu.japdemo.index.FileEntry;
+import com.sumu.japdemo.index.FileIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 搜索结果缓存：按规范化后的查询缓存整页结果 (W-TinyLFU 淘汰 + TTL)，
+ * 结果中任一哈希的做种节点变化时精确失效包含它的缓存页
+ */
+@Component
+public class SearchResultCache implements FileIndex.ChangeListener {
+
+    @Value("${p2p.search.cache.max-size:10000}")
+    private long maxSize;
+
+    @Value("${p2p.search.cache.ttl-ms:10000}")
+    private long ttlMs;
+
+    @Autowired
+    private FileIndex fileIndex;
+
+    private final ConcurrentHashMap<String, Set<CachedPage>> pagesByHash = new ConcurrentHashMap<>();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private Cache<String, CachedPage> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .removalListener((String key, CachedPage page, RemovalCause cause) -> unlink(page))
+                .build();
+        fileIndex.addChangeListener(this);
+    }
+
+    /**
+     * 命中直接返回；未命中时由 loader 计算，loader 需把读取过的索引条目登记到 Dependencies
+     */
+    public SearchPage get(String key, Function<Dependencies, SearchPage> loader) {
+        CachedPage cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached.page;
+        }
+        Dependencies dependencies = new Dependencies();
+        SearchPage page = loader.apply(dependencies);
+        CachedPage value = new CachedPage(key, page, dependencies.hashes());
+
+        // 先放入缓存并登记反向索引，再检查计算期间依赖是否变化，保证不会漏掉并发的失效事件
+        cache.put(key, value);
+        for (String fileHash : value.fileHashes) {
+            pagesByHash.computeIfAbsent(fileHash, hash -> ConcurrentHashMap.newKeySet()).add(value);
+        }
+        if (dependencies.isStale()) {
+            cache.asMap().remove(key, value);
+        }
+        return page;
+    }
+
+    @Override
+    public void onSeedersChanged(String fileHash) {
+        Set<CachedPage> pages = pagesByHash.get(fileHash);
+        if (pages == null) {
+            return;
+        }
+        for (CachedPage page : pages) {
+            if (cache.asMap().remove(page.key, page)) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("invalidationCount", invalidations.sum());
+        return result;
+    }
+
+    private void unlink(CachedPage page) {
+        if (page == null) {
+            return;
+        }
+        for (String fileHash : page.fileHashes) {
+            pagesByHash.computeIfPresent(fileHash, (hash, pages) -> {
+                pages.remove(page);
+                return pages.isEmpty() ? null : pages;
+            });
+        }
+    }
+
+    /**
+     * 记录计算结果时读取过的索引条目及当时的版本
+     */
+    public static final class Dependencies {
+
+        private final List<FileEntry> entries = new ArrayList<>();
+        private final List<Integer> versions = new ArrayList<>();
+
+        public void add(FileEntry entry) {
+            versions.add(entry.getVersion());
+            entries.add(entry);
+        }
+
+        List<String> hashes() {
+            List<String> hashes = new ArrayList<>(entries.size());
+            for (FileEntry entry : entries) {
+                hashes.add(entry.getFileHash());
+            }
+            return hashes;
+        }
+
+        boolean isStale() {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).getVersion() != versions.get(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class CachedPage {
+
+        private final String key;
+        private final SearchPage page;
+        private final List<String> fileHashes;
+
+        CachedPage(String key, SearchPage page, List<String> fileHashes) {
+            this.key = key;
+            this.page = page;
+            this.fileHashes = fileHashes;
+        }
+    }
+}
@@ -17,6 +17,12 @@ public class SocketIOConfig {
     @Value("${socketio.host:0.0.0.0}")
     private String socketioHost;
 
+    /**
+     * 单个 WebSocket 帧 / polling 请求体的上限，大文件库应使用分块注册，每块文件数由 p2p.register.max-chunk-files 限制
+     */
+    @Value("${socketio.max-frame-payload-length:1048576}")
+    private int maxFramePayloadLength;
+
     private SocketIOServer server;
 
     @Bean
@@ -29,6 +35,8 @@ public class SocketIOConfig {
         config.setUpgradeTimeout(10000);
         config.setPingTimeout(60000);
         config.setPingInterval(25000);
+        config.setMaxFramePayloadLength(maxFramePayloadLength);
+        config.setMaxHttpContentLength(maxFramePayloadLength);
 
         server = new SocketIOServer(config);
         return server;
@@ -4,10 +4,12 @@ import com.corundumstudio.socketio.SocketIOServer;
 import com.sumu.japdemo.socketio.SignalingSocketIOModule;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 @Component
+@Order(2)
 public class SocketIOStarter implements CommandLineRunner {
 
     @Autowired
@@ -0,0 +1,39 @@
+package com.sumu.japdemo.controller;
+
+import com.sumu.japdemo.cache.DownloadResultCache;
+import com.sumu.japdemo.cache.SearchResultCache;
+import com.sumu.japdemo.socketio.NodeEventDispatcher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+    @Autowired
+    private SearchResultCache searchResultCache;
+
+    @Autowired
+    private DownloadResultCache downloadResultCache;
+
+    @Autowired
+    private NodeEventDispatcher nodeEventDispatcher;
+
+    @GetMapping("/search-cache")
+    public Map<String, Object> searchCache() {
+        return searchResultCache.stats();
+    }
+
+    @GetMapping("/download-cache")
+    public Map<String, Object> downloadCache() {
+        return downloadResultCache.stats();
+    }
+
+    @GetMapping("/dispatch")
+    public Map<String, Object> dispatch() {
+        return nodeEventDispatcher.stats();
+    }
+}
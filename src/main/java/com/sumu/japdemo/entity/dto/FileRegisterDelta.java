@@ -0,0 +1,12 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class FileRegisterDelta {
+    private Long version;
+    private List<FileRegister> added;
+    private List<String> removed;
+}
@@ -0,0 +1,23 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+@Data
+public class RegisterAck {
+    private Long version;
+    private Boolean resync;
+
+    public static RegisterAck applied(long version) {
+        RegisterAck ack = new RegisterAck();
+        ack.setVersion(version);
+        ack.setResync(false);
+        return ack;
+    }
+
+    public static RegisterAck resync(long currentVersion) {
+        RegisterAck ack = new RegisterAck();
+        ack.setVersion(currentVersion);
+        ack.setResync(true);
+        return ack;
+    }
+}
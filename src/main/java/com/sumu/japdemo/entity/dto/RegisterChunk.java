@@ -0,0 +1,12 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class RegisterChunk {
+    private String sessionId;
+    private Long seq;
+    private List<FileRegister> files;
+}
@@ -0,0 +1,9 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+@Data
+public class RegisterCommit {
+    private String sessionId;
+    private Long chunks;
+}
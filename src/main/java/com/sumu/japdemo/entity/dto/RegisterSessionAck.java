@@ -0,0 +1,31 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+@Data
+public class RegisterSessionAck {
+    private String sessionId;
+    /**
+     * 最后一个已应用的块序号，从 1 开始
+     */
+    private Long seq;
+    /**
+     * 本次会话已上报的不同文件数
+     */
+    private Long fileCount;
+    /**
+     * 提交时移除的旧文件数
+     */
+    private Long removed;
+    private Integer maxChunkFiles;
+    private Integer window;
+    private Boolean resync;
+
+    public static RegisterSessionAck resync(String sessionId, long seq) {
+        RegisterSessionAck ack = new RegisterSessionAck();
+        ack.setSessionId(sessionId);
+        ack.setSeq(seq);
+        ack.setResync(true);
+        return ack;
+    }
+}
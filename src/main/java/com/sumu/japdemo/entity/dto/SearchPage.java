@@ -0,0 +1,14 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class SearchPage {
+    private String query;
+    private List<FileSearchResult> results;
+    private String nextCursor;
+    private Boolean hasMore;
+    private Integer totalEstimate;
+}
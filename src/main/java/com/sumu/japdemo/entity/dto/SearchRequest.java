@@ -0,0 +1,11 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+@Data
+public class SearchRequest {
+    private String query;
+    private Integer pageSize;
+    private String cursor;
+    private Integer maxNodes;
+}
@@ -1,10 +1,16 @@
 package com.sumu.japdemo.entity.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.sumu.japdemo.utils.RawJson;
 import lombok.Data;
 
+/**
+ * signal 只转发不解析，按原始 JSON 字节保存
+ */
 @Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class WebRtcSignal {
     private String targetUserId;
     private String fromUserId;
-    private Object signal;
+    private RawJson signal;
 }
@@ -0,0 +1,10 @@
+package com.sumu.japdemo.entity.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class WebRtcSignalBatch {
+    private List<WebRtcSignal> signals;
+}
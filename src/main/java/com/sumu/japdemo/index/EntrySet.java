@@ -0,0 +1,127 @@
+package com.sumu.japdemo.index;
+
+import java.util.function.Consumer;
+
+/**
+ * 单个节点做种的文件集合：按对象身份的开放寻址表，每个关联只占一个引用槽位。
+ * 每个节点在每个分片各有一个，由该分片的锁保护
+ */
+final class EntrySet {
+
+    private static final FileEntry[] EMPTY = new FileEntry[0];
+
+    private FileEntry[] slots = EMPTY;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean add(FileEntry entry) {
+        if ((size + 1) * 4 > slots.length * 3) {
+            resize(Math.max(4, slots.length * 2));
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(entry, mask); ; i = (i + 1) & mask) {
+            FileEntry current = slots[i];
+            if (current == null) {
+                slots[i] = entry;
+                size++;
+                return true;
+            }
+            if (current == entry) {
+                return false;
+            }
+        }
+    }
+
+    boolean contains(FileEntry entry) {
+        if (size == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(entry, mask); ; i = (i + 1) & mask) {
+            FileEntry current = slots[i];
+            if (current == null) {
+                return false;
+            }
+            if (current == entry) {
+                return true;
+            }
+        }
+    }
+
+    boolean remove(FileEntry entry) {
+        if (size == 0) {
+            return false;
+        }
+        int mask = slots.length - 1;
+        for (int i = slot(entry, mask); ; i = (i + 1) & mask) {
+            FileEntry current = slots[i];
+            if (current == null) {
+                return false;
+            }
+            if (current == entry) {
+                deleteAt(i, mask);
+                size--;
+                if (size == 0) {
+                    slots = EMPTY;
+                } else if (slots.length > 16 && size * 8 < slots.length) {
+                    resize(slots.length / 2);
+                }
+                return true;
+            }
+        }
+    }
+
+    void forEach(Consumer<FileEntry> consumer) {
+        for (FileEntry entry : slots) {
+            if (entry != null) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    long footprint() {
+        return 4L * slots.length;
+    }
+
+    /**
+     * 线性探测的反向移位删除，不留墓碑
+     */
+    private void deleteAt(int hole, int mask) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            FileEntry current = slots[i];
+            if (current == null) {
+                break;
+            }
+            int home = slot(current, mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                slots[hole] = current;
+                hole = i;
+            }
+        }
+        slots[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        FileEntry[] old = slots;
+        slots = new FileEntry[capacity];
+        int mask = capacity - 1;
+        for (FileEntry entry : old) {
+            if (entry != null) {
+                int i = slot(entry, mask);
+                while (slots[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = entry;
+            }
+        }
+    }
+
+    private static int slot(FileEntry entry, int mask) {
+        return (entry.keyHash() * 0x9E3779B9) >>> 7 & mask;
+    }
+}
@@ -0,0 +1,94 @@
+package com.sumu.japdemo.index;
+
+/**
+ * 索引中的一个文件：紧凑哈希键 + 元数据 + 做种节点句柄集合
+ */
+public final class FileEntry extends FileKey {
+
+    private final String fileName;
+    private final String lowerFileName;
+    private final long fileSize;
+    private final SeederSet seeders = new SeederSet();
+    private volatile int docId = -1;
+    private volatile int version;
+
+    FileEntry(FileKey key, String fileName, Long fileSize) {
+        super(key);
+        this.fileName = fileName;
+        // 文件名本身就是小写时 toLowerCase 返回同一实例，不额外占用内存
+        this.lowerFileName = fileName == null ? "" : fileName.toLowerCase();
+        this.fileSize = fileSize == null ? 0L : fileSize;
+    }
+
+    /**
+     * 每次调用都会由紧凑键重新生成十六进制串
+     */
+    public String getFileHash() {
+        return toHex();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getLowerFileName() {
+        return lowerFileName;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public int getSeederCount() {
+        return seeders.size();
+    }
+
+    /**
+     * 做种节点集合每变化一次加一，用于判断基于该条目的缓存结果是否过期
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 按哈希字符串顺序比较，不生成字符串
+     */
+    public int compareHash(FileEntry other) {
+        return compareKey(other);
+    }
+
+    /**
+     * 以下需持有所在分片的写锁
+     */
+    boolean addSeeder(int handle) {
+        if (!seeders.add(handle)) {
+            return false;
+        }
+        version++;
+        return true;
+    }
+
+    boolean removeSeeder(int handle) {
+        if (!seeders.remove(handle)) {
+            return false;
+        }
+        version++;
+        return true;
+    }
+
+    boolean hasSeeders() {
+        return seeders.size() > 0;
+    }
+
+    SeederSet seeders() {
+        return seeders;
+    }
+
+    int getDocId() {
+        return docId;
+    }
+
+    void setDocId(int docId) {
+        this.docId = docId;
+    }
+}
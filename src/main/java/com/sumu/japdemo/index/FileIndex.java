@@ -0,0 +1,653 @@
+package com.sumu.japdemo.index;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * 内存文件索引：文件哈希 -> 文件元数据 + 做种节点
+ * 搜索和下载查询完全由内存应答，MySQL 只负责持久化。
+ * 内部使用紧凑表示：哈希存为 4 个 long，节点 ID 驻留为 int 句柄，做种集合为 int 数组/位图，
+ * 对外接口仍使用字符串。
+ * 按哈希前缀分为 N 个分片，各自持有文件表、文件名索引和锁，不同分片的写入互不影响；
+ * 一次涉及大量文件的注册/注销按分片拆开并行执行。读操作不等待写锁，见 IndexShard
+ */
+@Component
+public class FileIndex {
+
+    /**
+     * 一次操作的文件数达到此值才拆分到多个线程，小批量在调用线程上逐分片执行
+     */
+    private static final int PARALLEL_THRESHOLD = 512;
+
+    private static final int MAX_SHARDS = 256;
+
+    private final IndexShard[] shards;
+
+    private final int shardMask;
+
+    private final NodeTable nodes;
+
+    private final ForkJoinPool fanOutPool;
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile IndexJournal journal;
+
+    /**
+     * 某个哈希的做种节点集合发生变化 (含文件新增和移除) 时回调，在分片锁释放后执行
+     */
+    public interface ChangeListener {
+        void onSeedersChanged(String fileHash);
+    }
+
+    /**
+     * 分块注册期间节点已上报的条目，每个分片一个 EntrySet，每个文件只占一个引用槽位。
+     * 只由该节点串行执行的注册任务访问，跨分片线程的可见性由 fanOut 的 join 保证
+     */
+    public static final class StagedFiles {
+
+        private final EntrySet[] seen;
+        private long size;
+
+        private StagedFiles(int shardCount) {
+            seen = new EntrySet[shardCount];
+        }
+
+        /**
+         * 已上报的不同文件数
+         */
+        public long size() {
+            return size;
+        }
+
+        /**
+         * 槽位数组占用的字节数 (按压缩指针估算)
+         */
+        public long footprint() {
+            long bytes = 0;
+            for (EntrySet set : seen) {
+                if (set != null) {
+                    bytes += set.footprint();
+                }
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * shardCount 向上取整为 2 的幂，最大 256
+     */
+    public FileIndex(@Value("${p2p.index.shards:16}") int shardCount) {
+        int count = 1;
+        while (count < Math.min(shardCount, MAX_SHARDS)) {
+            count <<= 1;
+        }
+        shards = new IndexShard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new IndexShard();
+        }
+        shardMask = count - 1;
+        nodes = new NodeTable(count);
+        int parallelism = Math.min(count, Runtime.getRuntime().availableProcessors());
+        fanOutPool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fanOutPool != null) {
+            fanOutPool.shutdown();
+        }
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * 设置后每次写操作生效后都会记录到 journal，传 null 停止记录
+     */
+    void setJournal(IndexJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * 无锁查找
+     */
+    public FileEntry getFile(String fileHash) {
+        if (fileHash == null) {
+            return null;
+        }
+        FileKey key = FileKey.of(fileHash);
+        return shards[key.prefix() & shardMask].files.get(key);
+    }
+
+    public List<FileEntry> getFiles() {
+        List<FileEntry> entries = new ArrayList<>(size());
+        for (IndexShard shard : shards) {
+            entries.addAll(shard.read(() -> {
+                List<FileEntry> snapshot = new ArrayList<>(shard.files.size());
+                shard.files.forEach(snapshot::add);
+                return snapshot;
+            }));
+        }
+        return entries;
+    }
+
+    /**
+     * 不区分大小写的文件名子串搜索，lowerQuery 需已转为小写；逐个分片在乐观读中收集匹配条目，
+     * consumer 在读之后回调，不持有任何锁
+     */
+    public void forEachByName(String lowerQuery, Consumer<FileEntry> consumer) {
+        for (IndexShard shard : shards) {
+            shard.read(() -> shard.nameIndex.matches(lowerQuery)).forEach(consumer);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (IndexShard shard : shards) {
+            size += shard.files.size();
+        }
+        return size;
+    }
+
+    public int nodeCount() {
+        return nodes.size();
+    }
+
+    public List<String> getSeeders(String fileHash) {
+        FileEntry entry = getFile(fileHash);
+        return entry == null ? Collections.emptyList() : getSeeders(entry);
+    }
+
+    public List<String> getSeeders(FileEntry entry) {
+        List<String> nodeIds = new ArrayList<>(entry.getSeederCount());
+        forEachSeeder(entry, nodeIds::add);
+        return nodeIds;
+    }
+
+    /**
+     * 按句柄顺序回调做种节点 ID，ID 字符串为驻留实例；先在乐观读中拷贝做种快照，回调时不持有任何锁。
+     * 句柄必须在同一次读内解析为 ID：读通过校验说明期间分片没有写入，快照中的关联仍然存在，句柄不会被释放；
+     * 读之外再解析的话，节点注销后句柄可能已被新节点复用，解析出错误的节点
+     */
+    public void forEachSeeder(FileEntry entry, Consumer<String> consumer) {
+        String[] nodeIds = shardOf(entry).read(() -> {
+            int[] handles = entry.seeders().toArray();
+            String[] resolved = new String[handles.length];
+            for (int i = 0; i < handles.length; i++) {
+                resolved[i] = nodes.nodeId(handles[i]);
+            }
+            return resolved;
+        });
+        for (String nodeId : nodeIds) {
+            if (nodeId != null) {
+                consumer.accept(nodeId);
+            }
+        }
+    }
+
+    public Set<String> getFileHashes(String nodeId) {
+        NodeTable.NodeRecord node = nodes.get(nodeId);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        Set<String> hashes = new HashSet<>();
+        for (int s = 0; s < shards.length; s++) {
+            for (FileEntry entry : snapshotFiles(s, node)) {
+                hashes.add(entry.getFileHash());
+            }
+        }
+        return hashes;
+    }
+
+    public void addFile(String nodeId, String fileHash, String fileName, Long fileSize) {
+        FileKey key = FileKey.of(fileHash);
+        int s = key.prefix() & shardMask;
+        IndexShard shard = shards[s];
+        ShardResult result = new ShardResult();
+        NodeTable.NodeRecord node = nodes.intern(nodeId);
+        long stamp = shard.lockWrite();
+        try {
+            addSeeder(s, node, key, fileName, fileSize, result);
+        } finally {
+            shard.unlockWrite(stamp);
+        }
+        nodes.unpin(node, result.delta);
+        fireSeedersChanged(result.changed);
+        IndexJournal current = journal;
+        if (current != null) {
+            FileRegister register = new FileRegister();
+            register.setHash(fileHash);
+            register.setFileName(fileName);
+            register.setFileSize(fileSize);
+            current.addFiles(nodeId, Collections.singletonList(register));
+        }
+    }
+
+    public void addFiles(String nodeId, Collection<FileRegister> registers) {
+        if (registers.isEmpty()) {
+            return;
+        }
+        List<FileRegister>[] groups = groupRegisters(registers);
+        ShardResult[] results = new ShardResult[shards.length];
+        NodeTable.NodeRecord node = nodes.intern(nodeId);
+        fanOut(nonEmpty(groups), registers.size(), s -> results[s] = addGroup(s, node, groups[s], null));
+        finish(node, results);
+        IndexJournal current = journal;
+        if (current != null) {
+            current.addFiles(nodeId, registers);
+        }
+    }
+
+    public StagedFiles beginStaging() {
+        return new StagedFiles(shards.length);
+    }
+
+    /**
+     * 分块注册的一块：与 addFiles 相同地立即生效，同时把这些文件记入 staged
+     */
+    public void stageFiles(String nodeId, Collection<FileRegister> registers, StagedFiles staged) {
+        if (registers.isEmpty()) {
+            return;
+        }
+        List<FileRegister>[] groups = groupRegisters(registers);
+        ShardResult[] results = new ShardResult[shards.length];
+        long[] added = new long[shards.length];
+        NodeTable.NodeRecord node = nodes.intern(nodeId);
+        fanOut(nonEmpty(groups), registers.size(), s -> {
+            EntrySet seen = staged.seen[s];
+            if (seen == null) {
+                seen = new EntrySet();
+                staged.seen[s] = seen;
+            }
+            List<FileEntry> entries = new ArrayList<>(groups[s].size());
+            results[s] = addGroup(s, node, groups[s], entries);
+            for (FileEntry entry : entries) {
+                if (seen.add(entry)) {
+                    added[s]++;
+                }
+            }
+        });
+        finish(node, results);
+        for (long count : added) {
+            staged.size += count;
+        }
+        IndexJournal current = journal;
+        if (current != null) {
+            current.addFiles(nodeId, registers);
+        }
+    }
+
+    /**
+     * 节点当前做种、但没有记入 staged 的条目，即分块注册提交时要移除的旧文件；不修改索引
+     */
+    public List<FileEntry> unstagedFiles(String nodeId, StagedFiles staged) {
+        NodeTable.NodeRecord node = nodes.get(nodeId);
+        if (node == null) {
+            return Collections.emptyList();
+        }
+        List<FileEntry> unstaged = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            if (node.files[s] == null) {
+                continue;
+            }
+            EntrySet seen = staged.seen[s];
+            for (FileEntry entry : snapshotFiles(s, node)) {
+                if (seen == null || !seen.contains(entry)) {
+                    unstaged.add(entry);
+                }
+            }
+        }
+        return unstaged;
+    }
+
+    /**
+     * 用 registers 整体替换节点的文件集合，返回被移除的哈希
+     */
+    public Set<String> replaceFiles(String nodeId, Collection<FileRegister> registers) {
+        List<FileRegister>[] groups = groupRegisters(registers);
+        ShardResult[] results = new ShardResult[shards.length];
+        NodeTable.NodeRecord node = nodes.intern(nodeId);
+        List<Integer> targets = new ArrayList<>();
+        for (int s = 0; s < shards.length; s++) {
+            if (groups[s] != null || node.files[s] != null) {
+                targets.add(s);
+            }
+        }
+        fanOut(targets, registers.size(), s -> {
+            Set<FileEntry> keep = Collections.newSetFromMap(new IdentityHashMap<>());
+            ShardResult result = groups[s] == null ? new ShardResult() : addGroup(s, node, groups[s], keep);
+            List<FileEntry> stale = new ArrayList<>();
+            for (FileEntry entry : snapshotFiles(s, node)) {
+                if (!keep.contains(entry)) {
+                    stale.add(entry);
+                }
+            }
+            removeEntries(s, node, stale, result);
+            results[s] = result;
+        });
+        Set<String> removed = finish(node, results);
+        IndexJournal current = journal;
+        if (current != null) {
+            current.replaceFiles(nodeId, registers);
+        }
+        return removed;
+    }
+
+    public void removeFiles(String nodeId, Collection<String> fileHashes) {
+        if (fileHashes.isEmpty()) {
+            return;
+        }
+        NodeTable.NodeRecord node = nodes.pin(nodeId);
+        if (node == null) {
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<FileEntry>[] groups = new List[shards.length];
+        for (String fileHash : fileHashes) {
+            int s = FileKey.prefix(fileHash) & shardMask;
+            FileEntry entry = shards[s].files.get(FileKey.of(fileHash));
+            if (entry != null) {
+                if (groups[s] == null) {
+                    groups[s] = new ArrayList<>();
+                }
+                groups[s].add(entry);
+            }
+        }
+        ShardResult[] results = new ShardResult[shards.length];
+        fanOut(nonEmpty(groups), fileHashes.size(), s -> {
+            ShardResult result = new ShardResult();
+            removeEntries(s, node, groups[s], result);
+            results[s] = result;
+        });
+        finish(node, results);
+        IndexJournal current = journal;
+        if (current != null) {
+            current.removeFiles(nodeId, fileHashes);
+        }
+    }
+
+    /**
+     * 移除节点的全部做种记录，返回受影响的哈希
+     */
+    public Set<String> removeNode(String nodeId) {
+        NodeTable.NodeRecord node = nodes.pin(nodeId);
+        if (node == null) {
+            return Collections.emptySet();
+        }
+        @SuppressWarnings("unchecked")
+        List<FileEntry>[] groups = new List[shards.length];
+        int total = 0;
+        for (int s = 0; s < shards.length; s++) {
+            if (node.files[s] != null) {
+                groups[s] = snapshotFiles(s, node);
+                total += groups[s].size();
+            }
+        }
+        ShardResult[] results = new ShardResult[shards.length];
+        fanOut(nonEmpty(groups), total, s -> {
+            ShardResult result = new ShardResult();
+            removeEntries(s, node, groups[s], result);
+            results[s] = result;
+        });
+        Set<String> removed = finish(node, results);
+        IndexJournal current = journal;
+        if (current != null) {
+            current.removeNode(nodeId);
+        }
+        return removed;
+    }
+
+    public void clear() {
+        long[] stamps = new long[shards.length];
+        for (int s = 0; s < shards.length; s++) {
+            stamps[s] = shards[s].lockWrite();
+        }
+        try {
+            for (IndexShard shard : shards) {
+                shard.files.clear();
+                shard.nameIndex.clear();
+            }
+            nodes.clear();
+        } finally {
+            for (int s = shards.length - 1; s >= 0; s--) {
+                shards[s].unlockWrite(stamps[s]);
+            }
+        }
+    }
+
+    /**
+     * 逐个节点回调其当前做种的条目，供快照使用；每个节点的集合按分片分别取快照
+     */
+    void forEachNode(BiConsumer<String, List<FileEntry>> consumer) {
+        nodes.forEach(node -> {
+            List<FileEntry> entries = new ArrayList<>();
+            for (int s = 0; s < shards.length; s++) {
+                if (node.files[s] != null) {
+                    entries.addAll(snapshotFiles(s, node));
+                }
+            }
+            if (!entries.isEmpty()) {
+                consumer.accept(node.nodeId, entries);
+            }
+        });
+    }
+
+    private IndexShard shardOf(FileKey key) {
+        return shards[key.prefix() & shardMask];
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FileRegister>[] groupRegisters(Collection<FileRegister> registers) {
+        List<FileRegister>[] groups = new List[shards.length];
+        for (FileRegister register : registers) {
+            int s = FileKey.prefix(register.getHash()) & shardMask;
+            if (groups[s] == null) {
+                groups[s] = new ArrayList<>();
+            }
+            groups[s].add(register);
+        }
+        return groups;
+    }
+
+    private static List<Integer> nonEmpty(List<?>[] groups) {
+        List<Integer> targets = new ArrayList<>();
+        for (int s = 0; s < groups.length; s++) {
+            if (groups[s] != null) {
+                targets.add(s);
+            }
+        }
+        return targets;
+    }
+
+    /**
+     * 对每个目标分片执行 task。文件数达到阈值且涉及多个分片时，其余分片提交到 fanOutPool，
+     * 调用线程执行第一个分片后等待全部完成
+     */
+    private void fanOut(List<Integer> targets, int work, IntConsumer task) {
+        if (fanOutPool == null || targets.size() < 2 || work < PARALLEL_THRESHOLD) {
+            for (int s : targets) {
+                task.accept(s);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> running = new ArrayList<>(targets.size() - 1);
+        for (int i = 1; i < targets.size(); i++) {
+            int s = targets.get(i);
+            running.add(fanOutPool.submit(() -> task.accept(s)));
+        }
+        task.accept(targets.get(0));
+        for (ForkJoinTask<?> future : running) {
+            future.join();
+        }
+    }
+
+    /**
+     * 分段持锁添加一个分片内的文件，keep 非空时收集这些文件的条目
+     */
+    private ShardResult addGroup(int s, NodeTable.NodeRecord node, List<FileRegister> group, Collection<FileEntry> keep) {
+        IndexShard shard = shards[s];
+        ShardResult result = new ShardResult();
+        for (int from = 0; from < group.size(); from += IndexShard.WRITE_CHUNK) {
+            int to = Math.min(group.size(), from + IndexShard.WRITE_CHUNK);
+            long stamp = shard.lockWrite();
+            try {
+                for (int i = from; i < to; i++) {
+                    FileRegister register = group.get(i);
+                    FileEntry entry = addSeeder(s, node, FileKey.of(register.getHash()),
+                            register.getFileName(), register.getFileSize(), result);
+                    if (keep != null) {
+                        keep.add(entry);
+                    }
+                }
+            } finally {
+                shard.unlockWrite(stamp);
+            }
+        }
+        return result;
+    }
+
+    private void removeEntries(int s, NodeTable.NodeRecord node, List<FileEntry> entries, ShardResult result) {
+        IndexShard shard = shards[s];
+        for (int from = 0; from < entries.size(); from += IndexShard.WRITE_CHUNK) {
+            int to = Math.min(entries.size(), from + IndexShard.WRITE_CHUNK);
+            long stamp = shard.lockWrite();
+            try {
+                for (int i = from; i < to; i++) {
+                    removeSeeder(s, node, entries.get(i), result);
+                }
+            } finally {
+                shard.unlockWrite(stamp);
+            }
+        }
+    }
+
+    private List<FileEntry> snapshotFiles(int s, NodeTable.NodeRecord node) {
+        return shards[s].read(() -> {
+            EntrySet set = node.files[s];
+            List<FileEntry> entries = new ArrayList<>(set == null ? 0 : set.size());
+            if (set != null) {
+                set.forEach(entries::add);
+            }
+            return entries;
+        });
+    }
+
+    /**
+     * 需持有分片 s 的写锁；返回该哈希的条目
+     */
+    private FileEntry addSeeder(int s, NodeTable.NodeRecord node, FileKey key, String fileName, Long fileSize,
+                                ShardResult result) {
+        IndexShard shard = shards[s];
+        FileEntry entry = shard.files.get(key);
+        if (entry == null) {
+            entry = new FileEntry(key, fileName, fileSize);
+            shard.files.put(entry);
+            shard.nameIndex.add(entry);
+        }
+        if (entry.addSeeder(node.handle)) {
+            EntrySet set = node.files[s];
+            if (set == null) {
+                set = new EntrySet();
+                node.files[s] = set;
+            }
+            set.add(entry);
+            result.changed.add(entry);
+            result.delta++;
+        }
+        return entry;
+    }
+
+    /**
+     * 需持有分片 s 的写锁；文件不再有做种节点时从索引中移除
+     */
+    private void removeSeeder(int s, NodeTable.NodeRecord node, FileEntry entry, ShardResult result) {
+        if (!entry.removeSeeder(node.handle)) {
+            return;
+        }
+        EntrySet set = node.files[s];
+        set.remove(entry);
+        if (set.size() == 0) {
+            node.files[s] = null;
+        }
+        if (!entry.hasSeeders()) {
+            IndexShard shard = shards[s];
+            shard.files.remove(entry);
+            shard.nameIndex.remove(entry);
+        }
+        result.removed.add(entry);
+        result.delta--;
+    }
+
+    /**
+     * 结束对节点记录的占用并在锁外通知监听器，返回被移除的哈希
+     */
+    private Set<String> finish(NodeTable.NodeRecord node, ShardResult[] results) {
+        int delta = 0;
+        for (ShardResult result : results) {
+            if (result != null) {
+                delta += result.delta;
+            }
+        }
+        nodes.unpin(node, delta);
+        Set<String> removed = new HashSet<>();
+        for (ShardResult result : results) {
+            if (result == null) {
+                continue;
+            }
+            fireSeedersChanged(result.changed);
+            for (FileEntry entry : result.removed) {
+                String fileHash = entry.getFileHash();
+                removed.add(fileHash);
+                fireSeedersChanged(fileHash);
+            }
+        }
+        return removed;
+    }
+
+    private void fireSeedersChanged(List<FileEntry> changed) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        for (FileEntry entry : changed) {
+            fireSeedersChanged(entry.getFileHash());
+        }
+    }
+
+    private void fireSeedersChanged(String fileHash) {
+        for (ChangeListener listener : listeners) {
+            listener.onSeedersChanged(fileHash);
+        }
+    }
+
+    /**
+     * 单个分片上一次操作的结果，由执行该分片的线程写入，fanOut 返回后由调用线程读取
+     */
+    private static final class ShardResult {
+
+        final List<FileEntry> changed = new ArrayList<>();
+        final List<FileEntry> removed = new ArrayList<>();
+        int delta;
+    }
+}
@@ -0,0 +1,127 @@
+package com.sumu.japdemo.index;
+
+/**
+ * 文件哈希的紧凑表示：64 位小写十六进制的 SHA-256 按 4 个 long 保存，不再为每个文件保留 64 字符的 String；
+ * 其他格式的哈希 (大写、非 SHA-256 等) 原样保存在 raw 中，保证与数据库中的值一致
+ */
+class FileKey {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    final long k0;
+    final long k1;
+    final long k2;
+    final long k3;
+    final String raw;
+
+    FileKey(FileKey key) {
+        this(key.k0, key.k1, key.k2, key.k3, key.raw);
+    }
+
+    private FileKey(long k0, long k1, long k2, long k3, String raw) {
+        this.k0 = k0;
+        this.k1 = k1;
+        this.k2 = k2;
+        this.k3 = k3;
+        this.raw = raw;
+    }
+
+    static FileKey of(String hash) {
+        if (hash.length() == 64 && isLowerHex(hash)) {
+            return new FileKey(parseHex(hash, 0), parseHex(hash, 16), parseHex(hash, 32), parseHex(hash, 48), null);
+        }
+        long spread = hash.hashCode() * 0x9E3779B97F4A7C15L;
+        return new FileKey(spread, 0, 0, 0, hash);
+    }
+
+    static FileKey ofLongs(long k0, long k1, long k2, long k3) {
+        return new FileKey(k0, k1, k2, k3, null);
+    }
+
+    /**
+     * 哈希前缀：k0 的最高 8 位，与 of(hash).k0 一致但不创建对象，用于选择分片
+     */
+    static int prefix(String hash) {
+        long k0 = hash.length() == 64 && isLowerHex(hash)
+                ? parseHex(hash, 0)
+                : hash.hashCode() * 0x9E3779B97F4A7C15L;
+        return (int) (k0 >>> 56);
+    }
+
+    int prefix() {
+        return (int) (k0 >>> 56);
+    }
+
+    /**
+     * 与 getFileHash() 相同的十六进制串，每次调用都会新建 String，只在输出结果时使用
+     */
+    String toHex() {
+        if (raw != null) {
+            return raw;
+        }
+        char[] chars = new char[64];
+        writeHex(chars, 0, k0);
+        writeHex(chars, 16, k1);
+        writeHex(chars, 32, k2);
+        writeHex(chars, 48, k3);
+        return new String(chars);
+    }
+
+    boolean sameKey(FileKey other) {
+        if (raw != null || other.raw != null) {
+            return raw != null && raw.equals(other.raw);
+        }
+        return k0 == other.k0 && k1 == other.k1 && k2 == other.k2 && k3 == other.k3;
+    }
+
+    int keyHash() {
+        long h = k0 ^ k1;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 与按十六进制字符串比较的顺序一致
+     */
+    int compareKey(FileKey other) {
+        if (raw != null || other.raw != null) {
+            return toHex().compareTo(other.toHex());
+        }
+        int c = Long.compareUnsigned(k0, other.k0);
+        if (c == 0) {
+            c = Long.compareUnsigned(k1, other.k1);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(k2, other.k2);
+        }
+        if (c == 0) {
+            c = Long.compareUnsigned(k3, other.k3);
+        }
+        return c;
+    }
+
+    private static boolean isLowerHex(String hash) {
+        for (int i = 0; i < 64; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long parseHex(String hash, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            char c = hash.charAt(i);
+            value = (value << 4) | (c <= '9' ? c - '0' : c - 'a' + 10);
+        }
+        return value;
+    }
+
+    private static void writeHex(char[] chars, int offset, long value) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.sumu.japdemo.index;
+
+import java.util.function.Consumer;
+
+/**
+ * 哈希 -> FileEntry 的开放寻址表，键直接比较 FileEntry 中的 4 个 long，不为每个文件保留 String 键和 Map.Entry。
+ * 写入由所在分片的写锁保护；get 无需加锁：删除只留墓碑、不移动其他槽位，扩容时整表替换，
+ * 并发读看到的探测链始终完整，不会漏掉读开始前已存在且未被删除的条目
+ */
+final class FileTable {
+
+    /**
+     * 墓碑，按引用比较，不参与键匹配
+     */
+    private static final FileEntry DELETED = new FileEntry(FileKey.of(""), "", 0L);
+
+    private volatile FileEntry[] slots = new FileEntry[16];
+    /**
+     * 每次写入槽位后都会写 size，读方先读 size 即可看到之前的槽位写入
+     */
+    private volatile int size;
+    /**
+     * 非空槽位数，含墓碑
+     */
+    private int used;
+
+    int size() {
+        return size;
+    }
+
+    FileEntry get(FileKey key) {
+        if (size == 0) {
+            return null;
+        }
+        FileEntry[] table = slots;
+        int mask = table.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            FileEntry current = table[i];
+            if (current == null) {
+                return null;
+            }
+            if (current != DELETED && current.sameKey(key)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 调用方需先确认键不存在
+     */
+    void put(FileEntry entry) {
+        if ((used + 1) * 4 > slots.length * 3) {
+            // 有效条目过半时扩容，否则按原容量重建以清除墓碑
+            resize((size + 1) * 2 > slots.length ? slots.length * 2 : slots.length);
+        }
+        FileEntry[] table = slots;
+        int mask = table.length - 1;
+        int i = slot(entry, mask);
+        while (table[i] != null && table[i] != DELETED) {
+            i = (i + 1) & mask;
+        }
+        if (table[i] == null) {
+            used++;
+        }
+        table[i] = entry;
+        size++;
+    }
+
+    boolean remove(FileEntry entry) {
+        FileEntry[] table = slots;
+        int mask = table.length - 1;
+        for (int i = slot(entry, mask); ; i = (i + 1) & mask) {
+            FileEntry current = table[i];
+            if (current == null) {
+                return false;
+            }
+            if (current == entry) {
+                table[i] = DELETED;
+                size--;
+                return true;
+            }
+        }
+    }
+
+    void forEach(Consumer<FileEntry> consumer) {
+        for (FileEntry entry : slots) {
+            if (entry != null && entry != DELETED) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    void clear() {
+        slots = new FileEntry[16];
+        used = 0;
+        size = 0;
+    }
+
+    long footprint() {
+        return 4L * slots.length;
+    }
+
+    /**
+     * 新表填好后再发布，读方持有的旧表不再被修改
+     */
+    private void resize(int capacity) {
+        FileEntry[] table = new FileEntry[capacity];
+        int mask = capacity - 1;
+        int count = 0;
+        for (FileEntry entry : slots) {
+            if (entry != null && entry != DELETED) {
+                int i = slot(entry, mask);
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+                count++;
+            }
+        }
+        slots = table;
+        used = count;
+    }
+
+    private static int slot(FileKey key, int mask) {
+        return (key.keyHash() * 0x9E3779B9) >>> 7 & mask;
+    }
+}
@@ -0,0 +1,60 @@
+package com.sumu.japdemo.index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 快照和 WAL 共用的二进制编码：字符串为长度 + UTF-8 字节 (null 长度为 -1)，
+ * 哈希为 1 字节标记 + 4 个 long 或原始字符串
+ */
+final class IndexCodec {
+
+    private static final byte KEY_LONGS = 0;
+
+    private static final byte KEY_RAW = 1;
+
+    private IndexCodec() {
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeKey(DataOutput out, FileKey key) throws IOException {
+        if (key.raw != null) {
+            out.writeByte(KEY_RAW);
+            writeString(out, key.raw);
+            return;
+        }
+        out.writeByte(KEY_LONGS);
+        out.writeLong(key.k0);
+        out.writeLong(key.k1);
+        out.writeLong(key.k2);
+        out.writeLong(key.k3);
+    }
+
+    static FileKey readKey(ByteBuffer in) {
+        if (in.get() == KEY_RAW) {
+            return FileKey.of(readString(in));
+        }
+        return FileKey.ofLongs(in.getLong(), in.getLong(), in.getLong(), in.getLong());
+    }
+}
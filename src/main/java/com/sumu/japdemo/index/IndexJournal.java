@@ -0,0 +1,20 @@
+package com.sumu.japdemo.index;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+
+import java.util.Collection;
+
+/**
+ * 索引写操作日志：FileIndex 在每次写操作生效后，在调用线程上按相同参数调用一次。
+ * 各操作都是幂等的，同一节点的操作按调用顺序记录，重放即可得到相同的索引
+ */
+interface IndexJournal {
+
+    void addFiles(String nodeId, Collection<FileRegister> registers);
+
+    void replaceFiles(String nodeId, Collection<FileRegister> registers);
+
+    void removeFiles(String nodeId, Collection<String> fileHashes);
+
+    void removeNode(String nodeId);
+}
@@ -0,0 +1,229 @@
+package com.sumu.japdemo.index;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 索引的快照 + WAL 持久化：定期把整个索引写成紧凑的二进制快照，两次快照之间的写操作追加到 WAL。
+ * 重启时 mmap 读取快照再重放 WAL 尾部即可恢复，不经过数据库。
+ * 使用前需先调用一次 restore()，之后索引的每次写操作都会记入 WAL
+ */
+public class IndexPersistence implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexPersistence.class);
+
+    private final FileIndex index;
+
+    private final Path dir;
+
+    private volatile WriteAheadLog wal;
+
+    /**
+     * WAL 写入失败后置位，下次快照成功后清除；期间的写操作由快照补上
+     */
+    private volatile boolean walBroken;
+
+    public IndexPersistence(FileIndex index, Path dir) {
+        this.index = index;
+        this.dir = dir;
+    }
+
+    /**
+     * 恢复的内容：sessions 为节点 -> 恢复令牌，nodeIds 为索引中或持有令牌的全部节点
+     */
+    public static final class RestoreResult {
+
+        private final Map<String, String> sessions;
+        private final Set<String> nodeIds;
+        private final long replayed;
+        private final long elapsedMs;
+
+        private RestoreResult(Map<String, String> sessions, Set<String> nodeIds, long replayed, long elapsedMs) {
+            this.sessions = sessions;
+            this.nodeIds = nodeIds;
+            this.replayed = replayed;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public Map<String, String> getSessions() {
+            return sessions;
+        }
+
+        public Set<String> getNodeIds() {
+            return nodeIds;
+        }
+
+        public long getReplayed() {
+            return replayed;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+    }
+
+    /**
+     * 读取快照并重放 WAL，然后开始记录新的写操作。index 应为空
+     */
+    public synchronized RestoreResult restore() throws IOException {
+        long start = System.currentTimeMillis();
+        Map<String, String> sessions = new HashMap<>();
+        long fromSeq = SnapshotFile.read(dir, index, sessions);
+        Replay replay = new Replay(sessions);
+        long nextSeq = WriteAheadLog.replay(dir, fromSeq, replay);
+
+        wal = new WriteAheadLog(dir, nextSeq);
+        index.setJournal(new Journal());
+
+        Set<String> nodeIds = new LinkedHashSet<>(sessions.keySet());
+        index.forEachNode((nodeId, entries) -> nodeIds.add(nodeId));
+        return new RestoreResult(sessions, nodeIds, replay.count, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 写一份新快照并删除已被覆盖的 WAL 段，返回快照字节数。sessions 为当前全部可恢复会话
+     */
+    public synchronized long snapshot(Map<String, String> sessions) throws IOException {
+        long walSeq = wal.roll();
+        long bytes = SnapshotFile.write(dir, walSeq, SnapshotFile.capture(index, sessions));
+        wal.deleteBefore(walSeq);
+        walBroken = false;
+        return bytes;
+    }
+
+    public void openSession(String nodeId, String token) {
+        append(() -> wal.openSession(nodeId, token));
+    }
+
+    public void closeSession(String nodeId) {
+        append(() -> wal.closeSession(nodeId));
+    }
+
+    /**
+     * 把已写入的 WAL 记录落盘
+     */
+    public void sync() {
+        WriteAheadLog current = wal;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.sync();
+        } catch (IOException e) {
+            logger.error("WAL 落盘失败", e);
+        }
+    }
+
+    public long walBytes() {
+        WriteAheadLog current = wal;
+        return current == null ? 0 : current.bytesWritten();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.setJournal(null);
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    private void append(WalWrite write) {
+        if (wal == null) {
+            return;
+        }
+        try {
+            write.run();
+        } catch (IOException e) {
+            if (!walBroken) {
+                logger.error("WAL 写入失败，下次快照前的写操作可能在重启后丢失", e);
+            }
+            walBroken = true;
+        }
+    }
+
+    private interface WalWrite {
+        void run() throws IOException;
+    }
+
+    private final class Journal implements IndexJournal {
+
+        @Override
+        public void addFiles(String nodeId, Collection<FileRegister> registers) {
+            append(() -> wal.addFiles(nodeId, registers));
+        }
+
+        @Override
+        public void replaceFiles(String nodeId, Collection<FileRegister> registers) {
+            append(() -> wal.replaceFiles(nodeId, registers));
+        }
+
+        @Override
+        public void removeFiles(String nodeId, Collection<String> fileHashes) {
+            append(() -> wal.removeFiles(nodeId, fileHashes));
+        }
+
+        @Override
+        public void removeNode(String nodeId) {
+            append(() -> wal.removeNode(nodeId));
+        }
+    }
+
+    /**
+     * 重放时直接写索引，此时尚未设置 journal，不会再次记录
+     */
+    private final class Replay implements WriteAheadLog.Handler {
+
+        private final Map<String, String> sessions;
+        private long count;
+
+        private Replay(Map<String, String> sessions) {
+            this.sessions = sessions;
+        }
+
+        @Override
+        public void addFiles(String nodeId, Collection<FileRegister> registers) {
+            index.addFiles(nodeId, registers);
+            count++;
+        }
+
+        @Override
+        public void replaceFiles(String nodeId, Collection<FileRegister> registers) {
+            index.replaceFiles(nodeId, registers);
+            count++;
+        }
+
+        @Override
+        public void removeFiles(String nodeId, Collection<String> fileHashes) {
+            index.removeFiles(nodeId, fileHashes);
+            count++;
+        }
+
+        @Override
+        public void removeNode(String nodeId) {
+            index.removeNode(nodeId);
+            count++;
+        }
+
+        @Override
+        public void openSession(String nodeId, String token) {
+            sessions.put(nodeId, token);
+            count++;
+        }
+
+        @Override
+        public void closeSession(String nodeId) {
+            sessions.remove(nodeId);
+            count++;
+        }
+    }
+}
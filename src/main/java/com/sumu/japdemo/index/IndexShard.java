@@ -0,0 +1,60 @@
+package com.sumu.japdemo.index;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * FileIndex 的一个分片：按哈希前缀划分的文件表、文件名倒排索引和分片锁。
+ * 按哈希查找不加锁；其他读操作先做乐观读，只有写者持锁期间连续校验失败时才退化为读锁。
+ * 写者每次最多持锁处理 WRITE_CHUNK 个文件，读方即使退化为读锁也只等待一小段
+ */
+final class IndexShard {
+
+    static final int WRITE_CHUNK = 64;
+
+    private static final int OPTIMISTIC_ATTEMPTS = 4;
+
+    final FileTable files = new FileTable();
+
+    final TrigramIndex nameIndex = new TrigramIndex();
+
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * reader 需无副作用且必然结束；并发写入下读到不一致的数据 (包括因此抛出的运行时异常，如数组越界) 时丢弃重试
+     */
+    <T> T read(Supplier<T> reader) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                T result;
+                try {
+                    result = reader.get();
+                } catch (RuntimeException e) {
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                    continue;
+                }
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            }
+            Thread.yield();
+        }
+        long stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long lockWrite() {
+        return lock.writeLock();
+    }
+
+    void unlockWrite(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+}
@@ -0,0 +1,147 @@
+package com.sumu.japdemo.index;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 节点 ID 驻留为 int 句柄：每个节点只保存一份 ID 字符串，做种集合里只存句柄。
+ * 节点记录带引用计数 (做种关联数 + 正在进行的写操作数)，归零时释放句柄以便复用。
+ * 分配和释放在表自身的锁内完成，按 ID/句柄查找无锁
+ */
+final class NodeTable {
+
+    private final int shardCount;
+    private final Map<String, NodeRecord> byId = new ConcurrentHashMap<>();
+    private volatile NodeRecord[] byHandle = new NodeRecord[64];
+    private int[] freeHandles = new int[16];
+    private int freeCount;
+    private int nextHandle;
+
+    NodeTable(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * 不占用记录，只用于读
+     */
+    NodeRecord get(String nodeId) {
+        return byId.get(nodeId);
+    }
+
+    /**
+     * 取得节点记录并占用一次，不存在时返回 null；用完后需调用 unpin
+     */
+    NodeRecord pin(String nodeId) {
+        NodeRecord record = byId.get(nodeId);
+        return record != null && record.tryPin() ? record : null;
+    }
+
+    /**
+     * 取得或创建节点记录并占用一次；用完后需调用 unpin
+     */
+    NodeRecord intern(String nodeId) {
+        NodeRecord record = pin(nodeId);
+        if (record != null) {
+            return record;
+        }
+        synchronized (this) {
+            record = byId.get(nodeId);
+            if (record != null && record.tryPin()) {
+                return record;
+            }
+            int handle = freeCount > 0 ? freeHandles[--freeCount] : nextHandle++;
+            NodeRecord[] table = byHandle;
+            if (handle >= table.length) {
+                table = Arrays.copyOf(table, table.length * 2);
+            }
+            record = new NodeRecord(nodeId, handle, shardCount);
+            table[handle] = record;
+            byHandle = table;
+            byId.put(nodeId, record);
+            return record;
+        }
+    }
+
+    /**
+     * 结束一次占用，delta 为本次操作新增减去移除的做种关联数；引用归零时释放句柄
+     */
+    void unpin(NodeRecord record, int delta) {
+        if (record.refs.addAndGet(delta - 1) != 0) {
+            return;
+        }
+        synchronized (this) {
+            // 与 intern 的加锁段互斥：CAS 成功后记录不会再被占用
+            if (!record.refs.compareAndSet(0, -1)) {
+                return;
+            }
+            byId.remove(record.nodeId, record);
+            byHandle[record.handle] = null;
+            if (freeCount == freeHandles.length) {
+                freeHandles = Arrays.copyOf(freeHandles, freeCount * 2);
+            }
+            freeHandles[freeCount++] = record.handle;
+        }
+    }
+
+    /**
+     * 句柄已被释放时返回 null。句柄释放后可能被新节点复用，调用方需在读取做种集合的同一次分片读内解析
+     */
+    String nodeId(int handle) {
+        NodeRecord[] table = byHandle;
+        NodeRecord record = handle < table.length ? table[handle] : null;
+        return record == null ? null : record.nodeId;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    void forEach(Consumer<NodeRecord> consumer) {
+        byId.values().forEach(consumer);
+    }
+
+    /**
+     * 需同时持有全部分片的写锁
+     */
+    synchronized void clear() {
+        byId.clear();
+        byHandle = new NodeRecord[64];
+        freeCount = 0;
+        nextHandle = 0;
+    }
+
+    static final class NodeRecord {
+
+        final String nodeId;
+        final int handle;
+        /**
+         * 按分片划分的做种文件集合，槽位 i 由分片 i 的写锁保护，没有文件时为 null
+         */
+        final EntrySet[] files;
+        /**
+         * -1 表示已释放
+         */
+        private final AtomicInteger refs = new AtomicInteger(1);
+
+        NodeRecord(String nodeId, int handle, int shardCount) {
+            this.nodeId = nodeId;
+            this.handle = handle;
+            this.files = new EntrySet[shardCount];
+        }
+
+        private boolean tryPin() {
+            while (true) {
+                int current = refs.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (refs.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.sumu.japdemo.index;
+
+import java.util.Arrays;
+
+/**
+ * 有序 int 数组形式的倒排表
+ */
+class PostingList {
+
+    private int[] ids = new int[4];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void add(int id) {
+        if (size == 0 || ids[size - 1] < id) {
+            ensureCapacity();
+            ids[size++] = id;
+            return;
+        }
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        ensureCapacity();
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        ids[pos] = id;
+        size++;
+    }
+
+    boolean remove(int id) {
+        int pos = Arrays.binarySearch(ids, 0, size, id);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+        size--;
+        if (size > 16 && size < ids.length / 4) {
+            ids = Arrays.copyOf(ids, ids.length / 2);
+        }
+        return true;
+    }
+
+    int[] copy() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * 就地保留 candidates 前 n 个中同时出现在本表中的 id，返回保留数量
+     */
+    int retainAll(int[] candidates, int n) {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < n && from < size; i++) {
+            int pos = Arrays.binarySearch(ids, from, size, candidates[i]);
+            if (pos >= 0) {
+                candidates[kept++] = candidates[i];
+                from = pos + 1;
+            } else {
+                from = -pos - 1;
+            }
+        }
+        return kept;
+    }
+
+    private void ensureCapacity() {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length + (ids.length >> 1) + 1);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.sumu.japdemo.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 做种节点句柄集合：节点少时为有序 int 数组，数组比位图更大时切换为按句柄寻址的位图。
+ * 写入和 forEach 需持有所在分片的锁；size() 可无锁读取，toArray() 可在乐观读中调用
+ */
+final class SeederSet {
+
+    private static final int[] EMPTY = new int[0];
+
+    private int[] sorted = EMPTY;
+    private long[] bits;
+    private volatile int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean add(int handle) {
+        if (bits != null) {
+            int word = handle >>> 6;
+            if (word >= bits.length) {
+                bits = Arrays.copyOf(bits, Math.max(word + 1, bits.length + (bits.length >> 1)));
+            }
+            long mask = 1L << handle;
+            if ((bits[word] & mask) != 0) {
+                return false;
+            }
+            bits[word] |= mask;
+            size++;
+            return true;
+        }
+        int n = size;
+        int pos = Arrays.binarySearch(sorted, 0, n, handle);
+        if (pos >= 0) {
+            return false;
+        }
+        pos = -pos - 1;
+        if (n == sorted.length) {
+            sorted = Arrays.copyOf(sorted, n < 4 ? n + 1 : n + (n >> 1));
+        }
+        System.arraycopy(sorted, pos, sorted, pos + 1, n - pos);
+        sorted[pos] = handle;
+        size = n + 1;
+        maybeToBitmap();
+        return true;
+    }
+
+    boolean remove(int handle) {
+        if (bits != null) {
+            int word = handle >>> 6;
+            long mask = 1L << handle;
+            if (word >= bits.length || (bits[word] & mask) == 0) {
+                return false;
+            }
+            bits[word] &= ~mask;
+            size--;
+            maybeToArray();
+            return true;
+        }
+        int n = size;
+        int pos = Arrays.binarySearch(sorted, 0, n, handle);
+        if (pos < 0) {
+            return false;
+        }
+        System.arraycopy(sorted, pos + 1, sorted, pos, n - pos - 1);
+        size = n - 1;
+        if (size == 0) {
+            sorted = EMPTY;
+        } else if (sorted.length > 8 && size < sorted.length >> 2) {
+            sorted = Arrays.copyOf(sorted, size << 1);
+        }
+        return true;
+    }
+
+    void forEach(IntConsumer consumer) {
+        if (bits != null) {
+            for (int word = 0; word < bits.length; word++) {
+                long value = bits[word];
+                while (value != 0) {
+                    consumer.accept((word << 6) + Long.numberOfTrailingZeros(value));
+                    value &= value - 1;
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            consumer.accept(sorted[i]);
+        }
+    }
+
+    /**
+     * 拷贝出全部句柄。数组引用只读取一次、长度按数组截断，并发写入时不会越界，
+     * 但结果可能不一致，需由调用方校验乐观读戳
+     */
+    int[] toArray() {
+        long[] bitmap = bits;
+        if (bitmap != null) {
+            int count = 0;
+            for (long value : bitmap) {
+                count += Long.bitCount(value);
+            }
+            int[] handles = new int[count];
+            int n = 0;
+            for (int word = 0; word < bitmap.length && n < count; word++) {
+                long value = bitmap[word];
+                while (value != 0 && n < count) {
+                    handles[n++] = (word << 6) + Long.numberOfTrailingZeros(value);
+                    value &= value - 1;
+                }
+            }
+            return n == count ? handles : Arrays.copyOf(handles, n);
+        }
+        int[] array = sorted;
+        return Arrays.copyOf(array, Math.min(size, array.length));
+    }
+
+    /**
+     * 当前表示占用的字节数 (不含对象头)，用于内存统计
+     */
+    long footprint() {
+        return bits != null ? 8L * bits.length : 4L * sorted.length;
+    }
+
+    /**
+     * 数组占用超过覆盖最大句柄的位图两倍时切换为位图
+     */
+    private void maybeToBitmap() {
+        int maxHandle = sorted[size - 1];
+        int words = (maxHandle >>> 6) + 1;
+        if (size <= 4 * words) {
+            return;
+        }
+        long[] bitmap = new long[words];
+        for (int i = 0; i < size; i++) {
+            bitmap[sorted[i] >>> 6] |= 1L << sorted[i];
+        }
+        bits = bitmap;
+        sorted = EMPTY;
+    }
+
+    /**
+     * 元素少到数组只需位图一半空间时切换回数组，与 maybeToBitmap 之间留有余量避免来回切换
+     */
+    private void maybeToArray() {
+        if (size >= bits.length) {
+            return;
+        }
+        int[] array = new int[Math.max(size, 1)];
+        int[] index = {0};
+        forEach(handle -> array[index[0]++] = handle);
+        sorted = size == 0 ? EMPTY : array;
+        bits = null;
+    }
+}
@@ -0,0 +1,173 @@
+package com.sumu.japdemo.index;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 索引快照文件。格式 (大端):
+ * 魔数(int) 版本(int) 起始 WAL 序号(long) 创建时间(long)
+ * 文件数(int) [哈希 文件名 大小(long)]...
+ * 节点数(int) [节点 ID 恢复令牌 文件数(int) 文件序号(int)...]...
+ * CRC32(long，覆盖之前的全部字节)。
+ * 先写临时文件再原子替换；读取时整体 mmap，不经过对象映射
+ */
+final class SnapshotFile {
+
+    static final String FILE_NAME = "index.snapshot";
+
+    private static final int MAGIC = 0x50325049;
+
+    private static final int VERSION = 1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * 一个节点的快照内容，token 为 null 表示没有可恢复的会话
+     */
+    static final class NodeState {
+
+        final String nodeId;
+        String token;
+        List<FileEntry> files = new ArrayList<>();
+
+        NodeState(String nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+
+    /**
+     * walSeq 为快照开始前滚动出的新 WAL 段的起始序号，恢复时从该序号开始重放
+     */
+    static long write(Path dir, long walSeq, Map<String, NodeState> nodes) throws IOException {
+        Files.createDirectories(dir);
+        Path target = dir.resolve(FILE_NAME);
+        Path temp = dir.resolve(FILE_NAME + ".tmp");
+        Map<FileEntry, Integer> ordinals = new IdentityHashMap<>();
+        List<FileEntry> files = new ArrayList<>();
+        for (NodeState node : nodes.values()) {
+            for (FileEntry entry : node.files) {
+                if (!ordinals.containsKey(entry)) {
+                    ordinals.put(entry, files.size());
+                    files.add(entry);
+                }
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(fileOut, crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(walSeq);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(files.size());
+            for (FileEntry entry : files) {
+                IndexCodec.writeKey(out, entry);
+                IndexCodec.writeString(out, entry.getFileName());
+                out.writeLong(entry.getFileSize());
+            }
+            out.writeInt(nodes.size());
+            for (NodeState node : nodes.values()) {
+                IndexCodec.writeString(out, node.nodeId);
+                IndexCodec.writeString(out, node.token);
+                out.writeInt(node.files.size());
+                for (FileEntry entry : node.files) {
+                    out.writeInt(ordinals.get(entry));
+                }
+            }
+            out.flush();
+            // 校验和本身不计入 CRC，直接写到底层文件
+            new DataOutputStream(fileOut).writeLong(crc.getValue());
+            fileOut.getChannel().force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return Files.size(target);
+    }
+
+    /**
+     * 读取快照，把节点和文件加入 index，会话令牌放入 sessions；返回应开始重放的 WAL 序号，没有快照时返回 0
+     */
+    static long read(Path dir, FileIndex index, Map<String, String> sessions) throws IOException {
+        Path path = dir.resolve(FILE_NAME);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("快照文件超过 2GB: " + path);
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < 32 || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("快照文件格式不正确: " + path);
+            }
+            ByteBuffer body = data.duplicate();
+            body.limit((int) size - 8);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != data.getLong((int) size - 8)) {
+                throw new IOException("快照文件校验失败: " + path);
+            }
+
+            ByteBuffer in = data.duplicate();
+            in.limit((int) size - 8);
+            in.position(8);
+            long walSeq = in.getLong();
+            in.getLong();
+            int fileCount = in.getInt();
+            FileRegister[] files = new FileRegister[fileCount];
+            for (int i = 0; i < fileCount; i++) {
+                FileRegister register = new FileRegister();
+                register.setHash(IndexCodec.readKey(in).toHex());
+                register.setFileName(IndexCodec.readString(in));
+                register.setFileSize(in.getLong());
+                files[i] = register;
+            }
+            int nodeCount = in.getInt();
+            for (int n = 0; n < nodeCount; n++) {
+                String nodeId = IndexCodec.readString(in);
+                String token = IndexCodec.readString(in);
+                int count = in.getInt();
+                List<FileRegister> registers = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    registers.add(files[in.getInt()]);
+                }
+                if (token != null) {
+                    sessions.put(nodeId, token);
+                }
+                index.addFiles(nodeId, registers);
+            }
+            return walSeq;
+        }
+    }
+
+    /**
+     * 合并索引中的节点和会话令牌，得到写快照用的节点列表
+     */
+    static Map<String, NodeState> capture(FileIndex index, Map<String, String> sessions) {
+        Map<String, NodeState> nodes = new LinkedHashMap<>();
+        index.forEachNode((nodeId, entries) -> nodes.computeIfAbsent(nodeId, NodeState::new).files = entries);
+        sessions.forEach((nodeId, token) -> nodes.computeIfAbsent(nodeId, NodeState::new).token = token);
+        return nodes;
+    }
+}
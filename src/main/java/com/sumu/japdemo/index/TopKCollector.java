@@ -0,0 +1,106 @@
+package com.sumu.japdemo.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * 搜索结果 top-K 选择：按做种节点数降序、哈希升序排名，只保留一页大小的小顶堆，不物化完整匹配集合
+ * 游标为上一页最后一条的 (节点数, 哈希)，只接受排在它之后的条目
+ */
+public class TopKCollector implements Consumer<FileEntry> {
+
+    /**
+     * 排名更靠后的排在前面，堆顶即当前保留结果中最差的一条
+     */
+    private static final Comparator<Ranked> WORST_FIRST = (a, b) -> {
+        if (a.count != b.count) {
+            return Integer.compare(a.count, b.count);
+        }
+        return b.entry.compareHash(a.entry);
+    };
+
+    private final int limit;
+    private final int afterCount;
+    private final FileKey afterKey;
+    private final PriorityQueue<Ranked> heap;
+    private int matched;
+    private int remaining;
+
+    public TopKCollector(int limit) {
+        this(limit, 0, null);
+    }
+
+    public TopKCollector(int limit, int afterCount, String afterHash) {
+        this.limit = limit;
+        this.afterCount = afterCount;
+        this.afterKey = afterHash == null ? null : FileKey.of(afterHash);
+        this.heap = new PriorityQueue<>(limit + 1, WORST_FIRST);
+    }
+
+    @Override
+    public void accept(FileEntry entry) {
+        int count = entry.getSeederCount();
+        if (count == 0) {
+            return;
+        }
+        matched++;
+        if (afterKey != null && !isAfterCursor(count, entry)) {
+            return;
+        }
+        remaining++;
+        if (heap.size() < limit) {
+            heap.add(new Ranked(entry, count));
+        } else if (limit > 0 && isBetter(count, entry, heap.peek())) {
+            heap.poll();
+            heap.add(new Ranked(entry, count));
+        }
+    }
+
+    /**
+     * 本页结果，排名从高到低
+     */
+    public List<Ranked> results() {
+        List<Ranked> results = new ArrayList<>(heap);
+        results.sort(Collections.reverseOrder(WORST_FIRST));
+        return results;
+    }
+
+    public int getMatched() {
+        return matched;
+    }
+
+    public boolean hasMore() {
+        return remaining > limit;
+    }
+
+    private static boolean isBetter(int count, FileEntry entry, Ranked worst) {
+        return count > worst.count || (count == worst.count && entry.compareHash(worst.entry) < 0);
+    }
+
+    private boolean isAfterCursor(int count, FileEntry entry) {
+        return count < afterCount || (count == afterCount && entry.compareKey(afterKey) > 0);
+    }
+
+    public static final class Ranked {
+
+        private final FileEntry entry;
+        private final int count;
+
+        Ranked(FileEntry entry, int count) {
+            this.entry = entry;
+            this.count = count;
+        }
+
+        public FileEntry getEntry() {
+            return entry;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+}
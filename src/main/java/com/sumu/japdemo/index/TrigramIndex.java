@@ -0,0 +1,157 @@
+package com.sumu.japdemo.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 文件名三元组(trigram)倒排索引，替代 LIKE '%q%' 全表扫描
+ * 对小写文件名建索引，查询时先对各 trigram 的倒排表求交集，再逐个校验子串，语义与原来的不区分大小写子串匹配一致。
+ * 自身不加锁：写入需持有所在分片的写锁，matches 在分片的乐观读中调用 (见 IndexShard.read)。
+ * 倒排表的映射用 ConcurrentHashMap，并发写入下查找不会陷入损坏的桶结构；其余数组读到的不一致由分片锁的校验丢弃
+ */
+public class TrigramIndex {
+
+    static final int GRAM_LENGTH = 3;
+
+    private final Map<Long, PostingList> postings = new ConcurrentHashMap<>();
+
+    private FileEntry[] docs = new FileEntry[1024];
+
+    private int[] freeIds = new int[64];
+
+    private int freeCount;
+
+    private int nextId;
+
+    /**
+     * 需持有所在分片的写锁
+     */
+    public void add(FileEntry entry) {
+        long[] grams = trigrams(entry.getLowerFileName());
+        int docId = allocateId();
+        docs[docId] = entry;
+        entry.setDocId(docId);
+        for (long gram : grams) {
+            postings.computeIfAbsent(gram, g -> new PostingList()).add(docId);
+        }
+    }
+
+    /**
+     * 需持有所在分片的写锁
+     */
+    public void remove(FileEntry entry) {
+        long[] grams = trigrams(entry.getLowerFileName());
+        int docId = entry.getDocId();
+        if (docId < 0 || docs[docId] != entry) {
+            return;
+        }
+        for (long gram : grams) {
+            PostingList list = postings.get(gram);
+            if (list != null && list.remove(docId) && list.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+        docs[docId] = null;
+        entry.setDocId(-1);
+        releaseId(docId);
+    }
+
+    /**
+     * 文件名包含 lowerQuery 的条目。在分片的乐观读中调用，并发写入下可能返回不一致的结果或抛出运行时异常，
+     * 由调用方校验后丢弃重试；调用方在锁外使用返回的结果
+     */
+    public List<FileEntry> matches(String lowerQuery) {
+        List<FileEntry> matched = new ArrayList<>();
+        FileEntry[] table = docs;
+        if (lowerQuery.length() < GRAM_LENGTH) {
+            int end = Math.min(nextId, table.length);
+            for (int i = 0; i < end; i++) {
+                FileEntry entry = table[i];
+                if (entry != null && entry.getLowerFileName().contains(lowerQuery)) {
+                    matched.add(entry);
+                }
+            }
+            return matched;
+        }
+        long[] grams = trigrams(lowerQuery);
+        PostingList[] lists = new PostingList[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+            if (lists[i] == null) {
+                return matched;
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+        int[] candidates = lists[0].copy();
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            count = lists[i].retainAll(candidates, count);
+        }
+        for (int i = 0; i < count; i++) {
+            FileEntry entry = table[candidates[i]];
+            if (entry != null && entry.getLowerFileName().contains(lowerQuery)) {
+                matched.add(entry);
+            }
+        }
+        return matched;
+    }
+
+    public int gramCount() {
+        return postings.size();
+    }
+
+    /**
+     * 需持有所在分片的写锁
+     */
+    public void clear() {
+        postings.clear();
+        docs = new FileEntry[1024];
+        freeCount = 0;
+        nextId = 0;
+    }
+
+    private int allocateId() {
+        if (freeCount > 0) {
+            return freeIds[--freeCount];
+        }
+        if (nextId == docs.length) {
+            docs = Arrays.copyOf(docs, docs.length * 2);
+        }
+        return nextId++;
+    }
+
+    private void releaseId(int docId) {
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = docId;
+    }
+
+    /**
+     * 去重后的 trigram，每个由 3 个 char 打包成一个 long
+     */
+    static long[] trigrams(String text) {
+        int n = text.length() - GRAM_LENGTH + 1;
+        if (n <= 0) {
+            return new long[0];
+        }
+        long[] grams = new long[n];
+        for (int i = 0; i < n; i++) {
+            grams[i] = ((long) text.charAt(i) << 32)
+                    | ((long) text.charAt(i + 1) << 16)
+                    | text.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 1;
+        for (int i = 1; i < n; i++) {
+            if (grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return distinct == n ? grams : Arrays.copyOf(grams, distinct);
+    }
+}
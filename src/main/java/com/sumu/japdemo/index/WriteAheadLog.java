@@ -0,0 +1,333 @@
+package com.sumu.japdemo.index;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的索引写操作日志，按段存放，文件名为段内第一条记录的序号 (wal-序号.log)。
+ * 每条记录: 长度(int) + CRC32(int) + 操作类型(byte) + 序号(long) + 内容。
+ * 记录直接写入文件 (进程崩溃不丢)，定期 sync 落盘；重放遇到长度或校验不符的记录即视为未写完的尾部并截断
+ */
+final class WriteAheadLog implements Closeable {
+
+    static final byte ADD_FILES = 1;
+    static final byte REPLACE_FILES = 2;
+    static final byte REMOVE_FILES = 3;
+    static final byte REMOVE_NODE = 4;
+    static final byte OPEN_SESSION = 5;
+    static final byte CLOSE_SESSION = 6;
+
+    private static final String PREFIX = "wal-";
+
+    private static final String SUFFIX = ".log";
+
+    private static final int HEADER_BYTES = 8;
+
+    private final Path dir;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    private final CRC32 crc = new CRC32();
+
+    private FileChannel channel;
+
+    private long nextSeq;
+
+    private long bytesWritten;
+
+    /**
+     * 重放时的回调，文件操作与 IndexJournal 相同
+     */
+    interface Handler extends IndexJournal {
+
+        void openSession(String nodeId, String token);
+
+        void closeSession(String nodeId);
+    }
+
+    /**
+     * 从 nextSeq 开始写一个新段
+     */
+    WriteAheadLog(Path dir, long nextSeq) throws IOException {
+        this.dir = dir;
+        this.nextSeq = nextSeq;
+        Files.createDirectories(dir);
+        channel = openSegment(nextSeq);
+    }
+
+    synchronized long nextSeq() {
+        return nextSeq;
+    }
+
+    synchronized long bytesWritten() {
+        return bytesWritten;
+    }
+
+    synchronized void addFiles(String nodeId, Collection<FileRegister> registers) throws IOException {
+        begin(ADD_FILES);
+        writeRegisters(nodeId, registers);
+        commit();
+    }
+
+    synchronized void replaceFiles(String nodeId, Collection<FileRegister> registers) throws IOException {
+        begin(REPLACE_FILES);
+        writeRegisters(nodeId, registers);
+        commit();
+    }
+
+    synchronized void removeFiles(String nodeId, Collection<String> fileHashes) throws IOException {
+        begin(REMOVE_FILES);
+        IndexCodec.writeString(out, nodeId);
+        out.writeInt(fileHashes.size());
+        for (String fileHash : fileHashes) {
+            IndexCodec.writeKey(out, FileKey.of(fileHash));
+        }
+        commit();
+    }
+
+    synchronized void removeNode(String nodeId) throws IOException {
+        begin(REMOVE_NODE);
+        IndexCodec.writeString(out, nodeId);
+        commit();
+    }
+
+    synchronized void openSession(String nodeId, String token) throws IOException {
+        begin(OPEN_SESSION);
+        IndexCodec.writeString(out, nodeId);
+        IndexCodec.writeString(out, token);
+        commit();
+    }
+
+    synchronized void closeSession(String nodeId) throws IOException {
+        begin(CLOSE_SESSION);
+        IndexCodec.writeString(out, nodeId);
+        commit();
+    }
+
+    synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * 落盘当前段并开始新段，返回新段的起始序号；此后的记录都不早于该序号
+     */
+    synchronized long roll() throws IOException {
+        channel.force(false);
+        channel.close();
+        channel = openSegment(nextSeq);
+        return nextSeq;
+    }
+
+    /**
+     * 删除完全早于 seq 的段 (快照已覆盖)
+     */
+    void deleteBefore(long seq) throws IOException {
+        List<Long> starts = segmentStarts(dir);
+        for (int i = 0; i + 1 < starts.size(); i++) {
+            if (starts.get(i + 1) <= seq) {
+                Files.deleteIfExists(segmentPath(dir, starts.get(i)));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+
+    /**
+     * 按序号顺序重放 fromSeq 及之后的记录，返回下一个可用序号。
+     * 记录不完整或校验失败时截断该段，之后的段被删除
+     */
+    static long replay(Path dir, long fromSeq, Handler handler) throws IOException {
+        long nextSeq = fromSeq;
+        if (!Files.isDirectory(dir)) {
+            return nextSeq;
+        }
+        boolean truncated = false;
+        for (long start : segmentStarts(dir)) {
+            Path path = segmentPath(dir, start);
+            if (truncated) {
+                // 截断点之后的记录缺少前序记录，不能再重放
+                Files.delete(path);
+                continue;
+            }
+            try (FileChannel segment = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = segment.size();
+                ByteBuffer data = size == 0 ? ByteBuffer.allocate(0)
+                        : segment.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                long valid = 0;
+                while (true) {
+                    Record record = Record.read(data);
+                    if (record == null) {
+                        break;
+                    }
+                    valid = data.position();
+                    if (record.seq >= fromSeq) {
+                        apply(record, handler);
+                    }
+                    nextSeq = Math.max(nextSeq, record.seq + 1);
+                }
+                if (valid < size) {
+                    segment.truncate(valid);
+                    truncated = true;
+                }
+            }
+        }
+        return nextSeq;
+    }
+
+    private void begin(byte op) throws IOException {
+        buffer.reset();
+        // 预留长度和校验和
+        out.writeLong(0);
+        out.writeByte(op);
+        out.writeLong(nextSeq);
+    }
+
+    private void commit() throws IOException {
+        byte[] bytes = buffer.toByteArray();
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        crc.reset();
+        crc.update(bytes, HEADER_BYTES, bytes.length - HEADER_BYTES);
+        record.putInt(0, bytes.length - HEADER_BYTES);
+        record.putInt(4, (int) crc.getValue());
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        nextSeq++;
+        bytesWritten += bytes.length;
+    }
+
+    private void writeRegisters(String nodeId, Collection<FileRegister> registers) throws IOException {
+        IndexCodec.writeString(out, nodeId);
+        out.writeInt(registers.size());
+        for (FileRegister register : registers) {
+            IndexCodec.writeKey(out, FileKey.of(register.getHash()));
+            IndexCodec.writeString(out, register.getFileName());
+            out.writeLong(register.getFileSize() == null ? 0L : register.getFileSize());
+        }
+    }
+
+    private FileChannel openSegment(long start) throws IOException {
+        return FileChannel.open(segmentPath(dir, start), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void apply(Record record, Handler handler) {
+        ByteBuffer in = record.body;
+        String nodeId = IndexCodec.readString(in);
+        switch (record.op) {
+            case ADD_FILES:
+                handler.addFiles(nodeId, readRegisters(in));
+                break;
+            case REPLACE_FILES:
+                handler.replaceFiles(nodeId, readRegisters(in));
+                break;
+            case REMOVE_FILES:
+                int count = in.getInt();
+                List<String> fileHashes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    fileHashes.add(IndexCodec.readKey(in).toHex());
+                }
+                handler.removeFiles(nodeId, fileHashes);
+                break;
+            case REMOVE_NODE:
+                handler.removeNode(nodeId);
+                break;
+            case OPEN_SESSION:
+                handler.openSession(nodeId, IndexCodec.readString(in));
+                break;
+            case CLOSE_SESSION:
+                handler.closeSession(nodeId);
+                break;
+            default:
+                throw new IllegalStateException("未知的 WAL 记录类型: " + record.op);
+        }
+    }
+
+    private static List<FileRegister> readRegisters(ByteBuffer in) {
+        int count = in.getInt();
+        List<FileRegister> registers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            FileRegister register = new FileRegister();
+            register.setHash(IndexCodec.readKey(in).toHex());
+            register.setFileName(IndexCodec.readString(in));
+            register.setFileSize(in.getLong());
+            registers.add(register);
+        }
+        return registers;
+    }
+
+    private static List<Long> segmentStarts(Path dir) throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                starts.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+        starts.sort(null);
+        return starts;
+    }
+
+    private static Path segmentPath(Path dir, long start) {
+        return dir.resolve(String.format("%s%016d%s", PREFIX, start, SUFFIX));
+    }
+
+    private static final class Record {
+
+        private final byte op;
+        private final long seq;
+        private final ByteBuffer body;
+
+        private Record(byte op, long seq, ByteBuffer body) {
+            this.op = op;
+            this.seq = seq;
+            this.body = body;
+        }
+
+        /**
+         * 读到末尾或遇到不完整、校验失败的记录时返回 null，position 停在该记录之前
+         */
+        private static Record read(ByteBuffer data) {
+            int start = data.position();
+            if (data.remaining() < HEADER_BYTES) {
+                return null;
+            }
+            int length = data.getInt(start);
+            int checksum = data.getInt(start + 4);
+            if (length < 9 || length > data.remaining() - HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer payload = data.duplicate();
+            payload.position(start + HEADER_BYTES).limit(start + HEADER_BYTES + length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            data.position(start + HEADER_BYTES + length);
+            byte op = payload.get();
+            long seq = payload.getLong();
+            return new Record(op, seq, payload.slice());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.sumu.japdemo.mapper;
+
+import com.sumu.japdemo.entity.FileInfo;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * t_file_info_compact，哈希参数和结果经 Sha256HashTypeHandler 转换
+ */
+@Mapper
+public interface CompactFileInfoMapper {
+
+    FileInfo selectByFileHash(@Param("fileHash") String fileHash);
+
+    List<FileInfo> selectByFileHashes(@Param("fileHashes") Collection<String> fileHashes);
+
+    int upsertNodeCounts(@Param("files") Collection<FileInfo> files);
+
+    int deleteByFileHashes(@Param("fileHashes") Collection<String> fileHashes);
+
+    long selectMaxId();
+
+    int recountInRange(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    int deleteUnseededInRange(@Param("fromId") long fromId, @Param("toId") long toId);
+}
@@ -0,0 +1,29 @@
+package com.sumu.japdemo.mapper;
+
+import com.sumu.japdemo.entity.NodeFile;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * t_node_file_compact，节点以 t_node_info.id (node_key) 关联
+ */
+@Mapper
+public interface CompactNodeFileMapper {
+
+    List<String> selectFileHashesByNodeKey(@Param("nodeKey") long nodeKey);
+
+    int insertIgnoreBatch(@Param("nodeKey") long nodeKey, @Param("fileHashes") Collection<String> fileHashes);
+
+    int deleteByNodeKeyAndHashes(@Param("nodeKey") long nodeKey, @Param("fileHashes") Collection<String> fileHashes);
+
+    int deleteByNodeIds(@Param("nodeIds") Collection<String> nodeIds);
+
+    List<NodeFile> selectActiveNodeFiles();
+
+    long selectMaxNodeKey();
+
+    int deleteInactiveInRange(@Param("fromKey") long fromKey, @Param("toKey") long toKey);
+}
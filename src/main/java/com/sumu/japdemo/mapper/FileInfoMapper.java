@@ -3,7 +3,20 @@ package com.sumu.japdemo.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.sumu.japdemo.entity.FileInfo;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
 
 @Mapper
 public interface FileInfoMapper extends BaseMapper<FileInfo> {
+
+    int upsertNodeCounts(@Param("files") Collection<FileInfo> files);
+
+    int deleteByFileHashes(@Param("fileHashes") Collection<String> fileHashes);
+
+    long selectMaxId();
+
+    int recountInRange(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    int deleteUnseededInRange(@Param("fromId") long fromId, @Param("toId") long toId);
 }
@@ -3,7 +3,25 @@ package com.sumu.japdemo.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.sumu.japdemo.entity.NodeFile;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 @Mapper
 public interface NodeFileMapper extends BaseMapper<NodeFile> {
+
+    List<String> selectFileHashesByNodeId(@Param("nodeId") String nodeId);
+
+    int insertIgnoreBatch(@Param("nodeId") String nodeId, @Param("fileHashes") Collection<String> fileHashes);
+
+    int deleteByNodeIdAndHashes(@Param("nodeId") String nodeId, @Param("fileHashes") Collection<String> fileHashes);
+
+    int deleteByNodeIds(@Param("nodeIds") Collection<String> nodeIds);
+
+    List<NodeFile> selectActiveNodeFiles();
+
+    long selectMaxId();
+
+    int deleteInactiveInRange(@Param("fromId") long fromId, @Param("toId") long toId);
 }
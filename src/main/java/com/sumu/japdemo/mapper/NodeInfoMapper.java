@@ -3,7 +3,18 @@ package com.sumu.japdemo.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.sumu.japdemo.entity.NodeInfo;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
 
 @Mapper
 public interface NodeInfoMapper extends BaseMapper<NodeInfo> {
+
+    int updateHeartbeatBatch(@Param("nodes") Collection<NodeInfo> nodes);
+
+    int deactivateNodes(@Param("nodeIds") Collection<String> nodeIds);
+
+    long selectMaxId();
+
+    int deactivateInRange(@Param("fromId") long fromId, @Param("toId") long toId);
 }
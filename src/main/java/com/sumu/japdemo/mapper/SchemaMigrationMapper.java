@@ -0,0 +1,27 @@
+package com.sumu.japdemo.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 旧表 -> 紧凑表的分块复制，以及迁移前后的表大小统计
+ */
+@Mapper
+public interface SchemaMigrationMapper {
+
+    int copyFileInfoInRange(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    int copyNodeFileInRange(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    long countUnstorableFileInfo();
+
+    long countUnstorableNodeFile();
+
+    List<Map<String, Object>> analyzeTable(@Param("table") String table);
+
+    List<Map<String, Object>> selectTableStats(@Param("tables") Collection<String> tables);
+}
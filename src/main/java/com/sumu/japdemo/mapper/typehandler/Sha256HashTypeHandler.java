@@ -0,0 +1,77 @@
+package com.sumu.japdemo.mapper.typehandler;
+
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 64 位小写十六进制的 SHA-256 哈希 <-> BINARY(32)，实体中仍使用 String。
+ * 只在紧凑表的 Mapper XML 中按列指定，不全局注册
+ */
+public class Sha256HashTypeHandler extends BaseTypeHandler<String> {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 能否无损存为 BINARY(32)：大写或其他格式的哈希读回时会变成小写十六进制，与内存索引中的值不一致
+     */
+    public static boolean isStorable(String hash) {
+        if (hash == null || hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < 64; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static byte[] toBytes(String hash) {
+        if (!isStorable(hash)) {
+            throw new IllegalArgumentException("不是 64 位小写十六进制的 SHA-256 哈希: " + hash);
+        }
+        byte[] bytes = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            bytes[i] = (byte) (Character.digit(hash.charAt(i * 2), 16) << 4 | Character.digit(hash.charAt(i * 2 + 1), 16));
+        }
+        return bytes;
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, String parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, toBytes(parameter));
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        byte[] bytes = rs.getBytes(columnName);
+        return bytes == null ? null : toHex(bytes);
+    }
+
+    @Override
+    public String getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        byte[] bytes = rs.getBytes(columnIndex);
+        return bytes == null ? null : toHex(bytes);
+    }
+
+    @Override
+    public String getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        byte[] bytes = cs.getBytes(columnIndex);
+        return bytes == null ? null : toHex(bytes);
+    }
+}
@@ -2,16 +2,25 @@ package com.sumu.japdemo.service;
 
 import com.sumu.japdemo.entity.dto.DownloadResult;
 import com.sumu.japdemo.entity.dto.FileSearchResult;
+import com.sumu.japdemo.entity.dto.SearchPage;
+import com.sumu.japdemo.entity.dto.SearchRequest;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface FileIndexService {
 
+    void loadIndex();
+
     List<FileSearchResult> searchFiles(String query);
 
+    SearchPage searchFilesPage(SearchRequest request);
+
     DownloadResult getDownloadNodes(String fileHash);
 
     List<String> getNodeIdsForFile(String fileHash);
 
     void updateFileNodeCount(String fileHash);
+
+    void updateFileNodeCounts(Collection<String> fileHashes);
 }
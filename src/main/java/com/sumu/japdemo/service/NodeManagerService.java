@@ -1,19 +1,73 @@
 package com.sumu.japdemo.service;
 
 import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.entity.dto.FileRegisterDelta;
+import com.sumu.japdemo.entity.dto.RegisterAck;
+import com.sumu.japdemo.entity.dto.RegisterChunk;
+import com.sumu.japdemo.entity.dto.RegisterCommit;
+import com.sumu.japdemo.entity.dto.RegisterSessionAck;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface NodeManagerService {
 
     void registerNode(String nodeId, String ipAddress);
 
+    /**
+     * 连接断开但节点可在宽限期内恢复，保留其注册，到期未恢复再由清理任务注销
+     */
+    void suspendNode(String nodeId, long graceMs);
+
+    /**
+     * 节点在宽限期内带令牌重连，只刷新内存中的存活状态，不写数据库
+     */
+    void resumeNode(String nodeId);
+
+    /**
+     * 从索引快照恢复的节点：进入宽限期，重连后需调用 writeBackRestoredNode
+     */
+    void restoreNode(String nodeId, long graceMs);
+
+    /**
+     * 启动对账已把从快照恢复的节点标记为离线并删除其关联，节点重连后把节点记录和内存索引中的文件写回 IndexStore；
+     * 其他节点直接返回
+     */
+    void writeBackRestoredNode(String nodeId, String ipAddress);
+
     void registerFiles(String nodeId, List<FileRegister> files);
 
+    RegisterAck applyFileDelta(String nodeId, FileRegisterDelta delta);
+
+    long getRegistrationVersion(String nodeId);
+
+    /**
+     * 分块注册：开始新会话，替换该节点尚未提交的会话
+     */
+    RegisterSessionAck beginRegistration(String nodeId);
+
+    /**
+     * 按序号应用一块，立即写入存储和索引；重复的块直接确认，序号不连续或会话已失效时要求重传
+     */
+    RegisterSessionAck applyRegisterChunk(String nodeId, RegisterChunk chunk);
+
+    /**
+     * 提交会话：移除本次会话中没有上报的旧文件，注册版本重置为 0
+     */
+    RegisterSessionAck commitRegistration(String nodeId, RegisterCommit commit);
+
+    /**
+     * 释放超过 p2p.register.session-timeout-ms 没有收到块的未提交会话，返回释放的数量；
+     * 已写入的块保留，旧文件不移除
+     */
+    int expireRegisterSessions();
+
     void unregisterFiles(String nodeId, List<String> hashes);
 
     void unregisterNode(String nodeId);
 
+    void unregisterNodes(Collection<String> nodeIds);
+
     void updateHeartbeat(String nodeId);
 
     boolean isNodeActive(String nodeId);
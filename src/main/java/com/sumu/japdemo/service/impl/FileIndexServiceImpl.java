@@ -1,87 +1,201 @@
 package com.sumu.japdemo.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.sumu.japdemo.entity.FileInfo;
-import com.sumu.japdemo.entity.NodeFile;
+import com.sumu.japdemo.cache.DownloadResultCache;
+import com.sumu.japdemo.cache.SearchResultCache;
 import com.sumu.japdemo.entity.dto.DownloadResult;
 import com.sumu.japdemo.entity.dto.FileSearchResult;
-import com.sumu.japdemo.mapper.FileInfoMapper;
-import com.sumu.japdemo.mapper.NodeFileMapper;
+import com.sumu.japdemo.entity.dto.SearchPage;
+import com.sumu.japdemo.entity.dto.SearchRequest;
+import com.sumu.japdemo.index.FileEntry;
+import com.sumu.japdemo.index.FileIndex;
+import com.sumu.japdemo.index.TopKCollector;
 import com.sumu.japdemo.service.FileIndexService;
+import com.sumu.japdemo.socketio.EventLane;
+import com.sumu.japdemo.socketio.NodeEventDispatcher;
+import com.sumu.japdemo.socketio.PresenceRegistry;
+import com.sumu.japdemo.store.IndexStore;
+import com.sumu.japdemo.task.NodeCountFlushTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class FileIndexServiceImpl implements FileIndexService {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileIndexServiceImpl.class);
+
+    @Value("${p2p.search.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${p2p.search.max-page-size:200}")
+    private int maxPageSize;
+
+    @Value("${p2p.search.default-nodes-per-result:20}")
+    private int defaultNodesPerResult;
+
+    @Value("${p2p.search.max-nodes-per-result:100}")
+    private int maxNodesPerResult;
+
+    @Value("${p2p.search.cache.enabled:true}")
+    private boolean searchCacheEnabled;
+
+    @Autowired
+    private IndexStore indexStore;
+
+    @Autowired
+    private FileIndex fileIndex;
+
+    @Autowired
+    private NodeCountFlushTask nodeCountFlushTask;
+
+    @Autowired
+    private SearchResultCache searchResultCache;
+
     @Autowired
-    private FileInfoMapper fileInfoMapper;
+    private DownloadResultCache downloadResultCache;
 
     @Autowired
-    private NodeFileMapper nodeFileMapper;
+    private PresenceRegistry presenceRegistry;
 
+    @Autowired
+    private NodeEventDispatcher dispatcher;
+
+    /**
+     * 节点上下线会改变其文件的可用节点数，包含这些文件的搜索缓存页和下载结果随之失效。
+     * 上下线在 IO 线程上通知，大文件库要遍历全部分片逐个失效，放到该节点的 BULK 队列执行，
+     * 排在其后的注销仍能读到节点的文件
+     */
+    @PostConstruct
+    public void init() {
+        presenceRegistry.addListener((nodeId, online) -> dispatcher.submitRequired(EventLane.BULK, nodeId, () -> {
+            for (String fileHash : fileIndex.getFileHashes(nodeId)) {
+                searchResultCache.onSeedersChanged(fileHash);
+                downloadResultCache.onSeedersChanged(fileHash);
+            }
+        }));
+    }
+
+    /**
+     * 只加载仍在线节点的做种记录，离线节点的残留数据由启动对账清理
+     */
+    @Override
+    public void loadIndex() {
+        int[] pairs = new int[1];
+        indexStore.forEachActiveFile((nodeId, fileInfo) -> {
+            fileIndex.addFile(nodeId, fileInfo.getFileHash(), fileInfo.getFileName(), fileInfo.getFileSize());
+            pairs[0]++;
+        });
+        logger.info("内存文件索引加载完成: {} 个文件, {} 条节点-文件关联", fileIndex.size(), pairs[0]);
+    }
+
+    /**
+     * 兼容旧协议: 只返回排名最高的一页 (p2p.search.max-page-size 条)，每个结果最多带 p2p.search.max-nodes-per-result 个节点，
+     * 没有 hasMore 标记；nodeCount 仍为在线节点总数，客户端可据此判断节点列表是否被截断
+     */
     @Override
     public List<FileSearchResult> searchFiles(String query) {
-        List<FileSearchResult> results = new ArrayList<>();
+        SearchRequest request = new SearchRequest();
+        request.setQuery(query);
+        request.setPageSize(maxPageSize);
+        request.setMaxNodes(maxNodesPerResult);
+        return searchFilesPage(request).getResults();
+    }
 
+    @Override
+    public SearchPage searchFilesPage(SearchRequest request) {
+        String query = request.getQuery();
         if (query == null || query.trim().isEmpty()) {
-            return results;
+            return emptyPage(query);
         }
 
         String lowerQuery = query.toLowerCase().trim();
         boolean isHashSearch = lowerQuery.matches("^[a-f0-9]{64}$");
+        int pageSize = clamp(request.getPageSize(), defaultPageSize, maxPageSize);
+        int maxNodes = clamp(request.getMaxNodes(), defaultNodesPerResult, maxNodesPerResult);
+        String cursor = request.getCursor();
 
         if (isHashSearch) {
-            FileInfo fileInfo = fileInfoMapper.selectOne(
-                    new LambdaQueryWrapper<FileInfo>()
-                            .eq(FileInfo::getFileHash, lowerQuery)
-            );
-            if (fileInfo != null) {
-                List<String> activeNodes = getActiveNodesForFile(fileInfo.getFileHash());
-                if (!activeNodes.isEmpty()) {
-                    FileSearchResult result = buildSearchResult(fileInfo, activeNodes, true);
-                    results.add(result);
-                }
+            return searchByHash(lowerQuery, maxNodes);
+        }
+        if (!searchCacheEnabled) {
+            return searchByName(lowerQuery, pageSize, cursor, maxNodes, null);
+        }
+        String cacheKey = lowerQuery + '\u0000' + pageSize + '\u0000' + maxNodes + '\u0000' + (cursor == null ? "" : cursor);
+        return searchResultCache.get(cacheKey,
+                dependencies -> searchByName(lowerQuery, pageSize, cursor, maxNodes, dependencies));
+    }
+
+    private SearchPage searchByHash(String lowerQuery, int maxNodes) {
+        SearchPage page = emptyPage(lowerQuery);
+        FileEntry entry = fileIndex.getFile(lowerQuery);
+        if (entry != null) {
+            FileSearchResult result = buildSearchResult(entry, maxNodes, true);
+            if (result != null) {
+                page.getResults().add(result);
+                page.setTotalEstimate(1);
             }
-        } else {
-            List<FileInfo> files = fileInfoMapper.selectList(
-                    new LambdaQueryWrapper<FileInfo>()
-                            .like(FileInfo::getFileName, lowerQuery)
-            );
-            for (FileInfo file : files) {
-                List<String> activeNodes = getActiveNodesForFile(file.getFileHash());
-                if (!activeNodes.isEmpty()) {
-                    FileSearchResult result = buildSearchResult(file, activeNodes, false);
-                    results.add(result);
-                }
+        }
+        return page;
+    }
+
+    private SearchPage searchByName(String lowerQuery, int pageSize, String cursor, int maxNodes,
+                                    SearchResultCache.Dependencies dependencies) {
+        SearchPage page = emptyPage(lowerQuery);
+        TopKCollector collector = newCollector(pageSize, cursor);
+        fileIndex.forEachByName(lowerQuery, collector);
+
+        List<TopKCollector.Ranked> ranked = collector.results();
+        for (TopKCollector.Ranked item : ranked) {
+            if (dependencies != null) {
+                dependencies.add(item.getEntry());
             }
+            FileSearchResult result = buildSearchResult(item.getEntry(), maxNodes, false);
+            if (result != null) {
+                page.getResults().add(result);
+            }
+        }
+        page.setTotalEstimate(collector.getMatched());
+        if (collector.hasMore() && !ranked.isEmpty()) {
+            TopKCollector.Ranked last = ranked.get(ranked.size() - 1);
+            page.setHasMore(true);
+            page.setNextCursor(encodeCursor(last.getCount(), last.getEntry().getFileHash()));
         }
+        return page;
+    }
 
-        return results;
+    private static SearchPage emptyPage(String query) {
+        SearchPage page = new SearchPage();
+        page.setQuery(query);
+        page.setResults(new ArrayList<>());
+        page.setHasMore(false);
+        page.setTotalEstimate(0);
+        return page;
     }
 
     @Override
     public DownloadResult getDownloadNodes(String fileHash) {
-        FileInfo fileInfo = fileInfoMapper.selectOne(
-                new LambdaQueryWrapper<FileInfo>()
-                        .eq(FileInfo::getFileHash, fileHash)
-        );
-        if (fileInfo == null) {
+        FileEntry entry = fileIndex.getFile(fileHash);
+        if (entry == null) {
             return null;
         }
-        List<String> activeNodes = getActiveNodesForFile(fileHash);
+        List<String> activeNodes = getActiveNodesForFile(entry);
         if (activeNodes.isEmpty()) {
             return null;
         }
         DownloadResult result = new DownloadResult();
         result.setFileHash(fileHash);
-        result.setFileName(fileInfo.getFileName());
-        result.setFileSize(fileInfo.getFileSize());
+        result.setFileName(entry.getFileName());
+        result.setFileSize(entry.getFileSize());
         result.setNodes(activeNodes);
         result.setNodeCount(activeNodes.size());
         return result;
@@ -89,53 +203,84 @@ public class FileIndexServiceImpl implements FileIndexService {
 
     @Override
     public List<String> getNodeIdsForFile(String fileHash) {
-        List<NodeFile> nodeFiles = nodeFileMapper.selectList(
-                new LambdaQueryWrapper<NodeFile>()
-                        .eq(NodeFile::getFileHash, fileHash)
-        );
-        return nodeFiles.stream()
-                .map(NodeFile::getNodeId)
-                .collect(Collectors.toList());
+        return fileIndex.getSeeders(fileHash);
     }
 
     @Override
     public void updateFileNodeCount(String fileHash) {
-        FileInfo fileInfo = fileInfoMapper.selectOne(
-                new LambdaQueryWrapper<FileInfo>()
-                        .eq(FileInfo::getFileHash, fileHash)
-        );
-        if (fileInfo != null) {
-            int nodeCount = Math.toIntExact(nodeFileMapper.selectCount(
-                    new LambdaQueryWrapper<NodeFile>()
-                            .eq(NodeFile::getFileHash, fileHash)
-            ));
-            if (nodeCount == 0) {
-                fileInfoMapper.deleteById(fileInfo.getId());
-            } else {
-                fileInfo.setNodeCount(nodeCount);
-                fileInfo.setUpdateTime(LocalDateTime.now());
-                fileInfoMapper.updateById(fileInfo);
+        updateFileNodeCounts(Collections.singletonList(fileHash));
+    }
+
+    @Override
+    public void updateFileNodeCounts(Collection<String> fileHashes) {
+        if (fileHashes == null || fileHashes.isEmpty()) {
+            return;
+        }
+        nodeCountFlushTask.markDirty(fileHashes);
+    }
+
+    private List<String> getActiveNodesForFile(FileEntry entry) {
+        List<String> activeNodes = new ArrayList<>(entry.getSeederCount());
+        collectActiveNodes(entry, activeNodes, Integer.MAX_VALUE);
+        return activeNodes;
+    }
+
+    /**
+     * 在线节点只收集前 limit 个，计数覆盖全部在线节点，返回在线节点总数
+     */
+    private int collectActiveNodes(FileEntry entry, List<String> activeNodes, int limit) {
+        int[] online = new int[1];
+        fileIndex.forEachSeeder(entry, nodeId -> {
+            if (presenceRegistry.isOnline(nodeId)) {
+                if (online[0]++ < limit) {
+                    activeNodes.add(nodeId);
+                }
             }
+        });
+        return online[0];
+    }
+
+    private TopKCollector newCollector(int pageSize, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return new TopKCollector(pageSize);
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(':');
+            return new TopKCollector(pageSize,
+                    Integer.parseInt(decoded.substring(0, separator)), decoded.substring(separator + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            logger.debug("无效的搜索游标: {}", cursor);
+            return new TopKCollector(pageSize);
         }
     }
 
-    private List<String> getActiveNodesForFile(String fileHash) {
-        List<String> nodeIds = getNodeIdsForFile(fileHash);
-        return nodeIds.stream()
-                .filter(this::isNodeSessionActive)
-                .collect(Collectors.toList());
+    private static String encodeCursor(int count, String fileHash) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((count + ":" + fileHash).getBytes(StandardCharsets.UTF_8));
     }
 
-    private boolean isNodeSessionActive(String nodeId) {
-        return WebSocketSessionManager.isSessionActive(nodeId);
+    private static int clamp(Integer value, int defaultValue, int max) {
+        if (value == null || value <= 0) {
+            return defaultValue;
+        }
+        return Math.min(value, max);
     }
 
-    private FileSearchResult buildSearchResult(FileInfo fileInfo, List<String> activeNodes, boolean isExactMatch) {
+    /**
+     * 没有在线节点时返回 null
+     */
+    private FileSearchResult buildSearchResult(FileEntry entry, int maxNodes, boolean isExactMatch) {
+        List<String> activeNodes = new ArrayList<>(Math.min(entry.getSeederCount(), maxNodes));
+        int nodeCount = collectActiveNodes(entry, activeNodes, maxNodes);
+        if (nodeCount == 0) {
+            return null;
+        }
         FileSearchResult result = new FileSearchResult();
-        result.setHash(fileInfo.getFileHash());
-        result.setFileName(fileInfo.getFileName());
-        result.setFileSize(fileInfo.getFileSize());
-        result.setNodeCount(activeNodes.size());
+        result.setHash(entry.getFileHash());
+        result.setFileName(entry.getFileName());
+        result.setFileSize(entry.getFileSize());
+        result.setNodeCount(nodeCount);
         result.setNodes(activeNodes);
         result.setIsExactMatch(isExactMatch);
         return result;
@@ -1,202 +1,334 @@
 package com.sumu.japdemo.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.sumu.japdemo.entity.FileInfo;
-import com.sumu.japdemo.entity.NodeFile;
-import com.sumu.japdemo.entity.NodeInfo;
 import com.sumu.japdemo.entity.dto.FileRegister;
-import com.sumu.japdemo.mapper.FileInfoMapper;
-import com.sumu.japdemo.mapper.NodeFileMapper;
-import com.sumu.japdemo.mapper.NodeInfoMapper;
-import com.sumu.japdemo.service.FileIndexService;
+import com.sumu.japdemo.entity.dto.FileRegisterDelta;
+import com.sumu.japdemo.entity.dto.RegisterAck;
+import com.sumu.japdemo.entity.dto.RegisterChunk;
+import com.sumu.japdemo.entity.dto.RegisterCommit;
+import com.sumu.japdemo.entity.dto.RegisterSessionAck;
+import com.sumu.japdemo.index.FileEntry;
+import com.sumu.japdemo.index.FileIndex;
 import com.sumu.japdemo.service.NodeManagerService;
+import com.sumu.japdemo.socketio.PresenceRegistry;
+import com.sumu.japdemo.store.IndexStore;
+import com.sumu.japdemo.task.HeartbeatFlushTask;
+import com.sumu.japdemo.task.NodeCountFlushTask;
+import com.sumu.japdemo.task.NodeLivenessTracker;
+import com.sumu.japdemo.utils.BatchUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * 先写 IndexStore (返回时已提交)，成功后再修改内存索引，写入失败时索引保持不变
+ */
 @Service
 public class NodeManagerServiceImpl implements NodeManagerService {
 
+    /**
+     * 每个节点最后一次已应用的注册版本，全量注册后为 0
+     */
+    private final ConcurrentHashMap<String, Long> registrationVersions = new ConcurrentHashMap<>();
+
+    /**
+     * 每个节点最近一次的分块注册会话，提交后只保留结果以便重复的提交得到同样的确认
+     */
+    private final ConcurrentHashMap<String, RegisterSession> registerSessions = new ConcurrentHashMap<>();
+
+    /**
+     * 从快照恢复、尚未重连的节点，IndexStore 中没有它们的在线记录和关联
+     */
+    private final Set<String> restoredNodes = ConcurrentHashMap.newKeySet();
+
+    @Value("${p2p.register.max-chunk-files:1000}")
+    private int maxChunkFiles;
+
+    @Value("${p2p.register.window:4}")
+    private int window;
+
+    @Value("${p2p.register.session-timeout-ms:300000}")
+    private long sessionTimeoutMs;
+
+    @Autowired
+    private IndexStore indexStore;
+
+    @Autowired
+    private FileIndex fileIndex;
+
     @Autowired
-    private NodeInfoMapper nodeInfoMapper;
+    private HeartbeatFlushTask heartbeatFlushTask;
 
     @Autowired
-    private NodeFileMapper nodeFileMapper;
+    private NodeLivenessTracker livenessTracker;
 
     @Autowired
-    private FileInfoMapper fileInfoMapper;
+    private PresenceRegistry presenceRegistry;
 
     @Autowired
-    private FileIndexService fileIndexService;
+    private NodeCountFlushTask nodeCountFlushTask;
 
     @Override
     public void registerNode(String nodeId, String ipAddress) {
-        NodeInfo nodeInfo = nodeInfoMapper.selectOne(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getNodeId, nodeId)
-        );
-        if (nodeInfo == null) {
-            nodeInfo = new NodeInfo();
-            nodeInfo.setCreateTime(LocalDateTime.now());
-        }
-        nodeInfo.setNodeId(nodeId);
-        nodeInfo.setIpAddress(ipAddress);
-        nodeInfo.setActive(true);
-        nodeInfo.setLastHeartbeat(LocalDateTime.now());
-        nodeInfo.setUpdateTime(LocalDateTime.now());
-
-        if (nodeInfo.getId() == null) {
-            nodeInfoMapper.insert(nodeInfo);
-        } else {
-            nodeInfoMapper.updateById(nodeInfo);
+        indexStore.saveNode(nodeId, ipAddress);
+        livenessTracker.touch(nodeId);
+    }
+
+    @Override
+    public void suspendNode(String nodeId, long graceMs) {
+        livenessTracker.touch(nodeId, graceMs);
+    }
+
+    @Override
+    public void resumeNode(String nodeId) {
+        livenessTracker.touch(nodeId);
+    }
+
+    @Override
+    public void restoreNode(String nodeId, long graceMs) {
+        restoredNodes.add(nodeId);
+        livenessTracker.touch(nodeId, graceMs);
+    }
+
+    @Override
+    public void writeBackRestoredNode(String nodeId, String ipAddress) {
+        if (!restoredNodes.remove(nodeId)) {
+            return;
         }
+        Set<String> fileHashes = fileIndex.getFileHashes(nodeId);
+        indexStore.saveNode(nodeId, ipAddress);
+        indexStore.replaceNodeFiles(nodeId, fileHashes);
+        // 对账可能已把这些文件的 node_count 清零或删除，按内存索引重新写回
+        nodeCountFlushTask.markDirty(fileHashes);
     }
 
     @Override
-    @Transactional
     public void registerFiles(String nodeId, List<FileRegister> files) {
-        Set<String> newFileHashes = new HashSet<>();
+        Map<String, FileRegister> newFiles = new LinkedHashMap<>();
+        for (FileRegister file : files) {
+            newFiles.putIfAbsent(file.getHash(), file);
+        }
+
+        indexStore.replaceNodeFiles(nodeId, newFiles.keySet());
+
+        // t_file_info 与 node_count 由 NodeCountFlushTask 根据内存索引的变化批量写回
+        fileIndex.replaceFiles(nodeId, newFiles.values());
+        registrationVersions.put(nodeId, 0L);
+        registerSessions.remove(nodeId);
+    }
+
+    /**
+     * 增量注册：version 必须是上一次已应用版本 + 1，重复的版本直接确认，出现缺口则要求客户端全量重新注册
+     */
+    @Override
+    public RegisterAck applyFileDelta(String nodeId, FileRegisterDelta delta) {
+        long currentVersion = getRegistrationVersion(nodeId);
+        long version = delta.getVersion() == null ? -1 : delta.getVersion();
+        if (version <= currentVersion && version >= 0) {
+            return RegisterAck.applied(currentVersion);
+        }
+        if (version != currentVersion + 1) {
+            return RegisterAck.resync(currentVersion);
+        }
+
+        List<FileRegister> addedFiles = delta.getAdded() == null ? Collections.emptyList() : delta.getAdded();
+        List<String> removedHashes = delta.getRemoved() == null ? Collections.emptyList() : delta.getRemoved();
+        indexStore.updateNodeFiles(nodeId, addedFiles.stream()
+                .map(FileRegister::getHash)
+                .collect(Collectors.toList()), removedHashes);
+
+        fileIndex.removeFiles(nodeId, removedHashes);
+        RegisterSession session = registerSessions.get(nodeId);
+        if (session != null && session.staged != null) {
+            // 分块注册进行中新增的文件也算已上报，提交时不移除
+            fileIndex.stageFiles(nodeId, addedFiles, session.staged);
+        } else {
+            fileIndex.addFiles(nodeId, addedFiles);
+        }
+        registrationVersions.put(nodeId, version);
+        return RegisterAck.applied(version);
+    }
+
+    @Override
+    public long getRegistrationVersion(String nodeId) {
+        return registrationVersions.getOrDefault(nodeId, 0L);
+    }
+
+    @Override
+    public RegisterSessionAck beginRegistration(String nodeId) {
+        RegisterSession session = new RegisterSession(UUID.randomUUID().toString(), fileIndex.beginStaging());
+        registerSessions.put(nodeId, session);
+
+        RegisterSessionAck ack = session.ack();
+        ack.setMaxChunkFiles(maxChunkFiles);
+        ack.setWindow(window);
+        return ack;
+    }
+
+    /**
+     * 每块一个独立的短事务，只插入本块的关联；同一节点的块由调度器串行执行
+     */
+    @Override
+    public RegisterSessionAck applyRegisterChunk(String nodeId, RegisterChunk chunk) {
+        RegisterSession session = registerSessions.get(nodeId);
+        if (session == null || session.staged == null || !session.id.equals(chunk.getSessionId())) {
+            return RegisterSessionAck.resync(chunk.getSessionId(), 0);
+        }
+        long seq = chunk.getSeq() == null ? -1 : chunk.getSeq();
+        session.lastActive = System.currentTimeMillis();
+        if (seq <= session.lastSeq && seq > 0) {
+            return session.ack();
+        }
+        List<FileRegister> files = chunk.getFiles() == null ? Collections.emptyList() : chunk.getFiles();
+        if (seq != session.lastSeq + 1 || files.size() > maxChunkFiles) {
+            return RegisterSessionAck.resync(session.id, session.lastSeq);
+        }
 
+        Map<String, FileRegister> newFiles = new LinkedHashMap<>();
         for (FileRegister file : files) {
-            String fileHash = file.getHash();
-            newFileHashes.add(fileHash);
-
-            NodeFile existingNodeFile = nodeFileMapper.selectOne(
-                    new LambdaQueryWrapper<NodeFile>()
-                            .eq(NodeFile::getNodeId, nodeId)
-                            .eq(NodeFile::getFileHash, fileHash)
-            );
-            if (existingNodeFile == null) {
-                NodeFile nodeFile = new NodeFile();
-                nodeFile.setNodeId(nodeId);
-                nodeFile.setFileHash(fileHash);
-                nodeFile.setCreateTime(LocalDateTime.now());
-                nodeFileMapper.insert(nodeFile);
-            }
+            newFiles.putIfAbsent(file.getHash(), file);
+        }
+        indexStore.updateNodeFiles(nodeId, newFiles.keySet(), Collections.emptyList());
 
-            FileInfo existingFile = fileInfoMapper.selectOne(
-                    new LambdaQueryWrapper<FileInfo>()
-                            .eq(FileInfo::getFileHash, fileHash)
-            );
-            if (existingFile == null) {
-                FileInfo fileInfo = new FileInfo();
-                fileInfo.setFileHash(fileHash);
-                fileInfo.setFileName(file.getFileName());
-                fileInfo.setFileSize(file.getFileSize());
-                fileInfo.setNodeCount(1);
-                fileInfo.setCreateTime(LocalDateTime.now());
-                fileInfo.setUpdateTime(LocalDateTime.now());
-                fileInfoMapper.insert(fileInfo);
-            } else {
-                existingFile.setUpdateTime(LocalDateTime.now());
-                fileInfoMapper.updateById(existingFile);
-            }
+        fileIndex.stageFiles(nodeId, newFiles.values(), session.staged);
+        session.lastSeq = seq;
+        return session.ack();
+    }
+
+    /**
+     * 旧文件按块从存储和索引中移除，每块一个短事务；提交前的搜索结果可能仍包含这些文件
+     */
+    @Override
+    public RegisterSessionAck commitRegistration(String nodeId, RegisterCommit commit) {
+        RegisterSession session = registerSessions.get(nodeId);
+        if (session == null || !session.id.equals(commit.getSessionId())) {
+            return RegisterSessionAck.resync(commit.getSessionId(), 0);
+        }
+        if (session.staged == null) {
+            return session.ack();
+        }
+        if (commit.getChunks() == null || commit.getChunks() != session.lastSeq) {
+            return RegisterSessionAck.resync(session.id, session.lastSeq);
+        }
 
-            fileIndexService.updateFileNodeCount(fileHash);
-        }
-
-        List<NodeFile> oldFiles = nodeFileMapper.selectList(
-                new LambdaQueryWrapper<NodeFile>()
-                        .eq(NodeFile::getNodeId, nodeId)
-        );
-        for (NodeFile oldFile : oldFiles) {
-            if (!newFileHashes.contains(oldFile.getFileHash())) {
-                nodeFileMapper.delete(
-                        new LambdaQueryWrapper<NodeFile>()
-                                .eq(NodeFile::getNodeId, nodeId)
-                                .eq(NodeFile::getFileHash, oldFile.getFileHash())
-                );
-                fileIndexService.updateFileNodeCount(oldFile.getFileHash());
+        List<FileEntry> stale = fileIndex.unstagedFiles(nodeId, session.staged);
+        for (List<FileEntry> chunk : BatchUtil.partition(stale, maxChunkFiles)) {
+            List<String> hashes = chunk.stream()
+                    .map(FileEntry::getFileHash)
+                    .collect(Collectors.toList());
+            indexStore.updateNodeFiles(nodeId, Collections.emptyList(), hashes);
+            fileIndex.removeFiles(nodeId, hashes);
+        }
+        session.fileCount = session.staged.size();
+        session.removed = stale.size();
+        session.staged = null;
+        registrationVersions.put(nodeId, 0L);
+        return session.ack();
+    }
+
+    /**
+     * 只移除映射，正在执行的块或提交仍持有会话引用并正常完成，之后的块和提交收到 resync
+     */
+    @Override
+    public int expireRegisterSessions() {
+        long deadline = System.currentTimeMillis() - sessionTimeoutMs;
+        int expired = 0;
+        for (Map.Entry<String, RegisterSession> entry : registerSessions.entrySet()) {
+            RegisterSession session = entry.getValue();
+            if (session.staged != null && session.lastActive < deadline
+                    && registerSessions.remove(entry.getKey(), session)) {
+                expired++;
             }
         }
+        return expired;
     }
 
     @Override
-    @Transactional
     public void unregisterFiles(String nodeId, List<String> hashes) {
         if (hashes == null || hashes.isEmpty()) {
             return;
         }
 
-        for (String hash : hashes) {
-            nodeFileMapper.delete(
-                    new LambdaQueryWrapper<NodeFile>()
-                            .eq(NodeFile::getNodeId, nodeId)
-                            .eq(NodeFile::getFileHash, hash)
-            );
-            fileIndexService.updateFileNodeCount(hash);
-        }
+        indexStore.updateNodeFiles(nodeId, Collections.emptyList(), hashes);
+        fileIndex.removeFiles(nodeId, hashes);
     }
 
     @Override
-    @Transactional
     public void unregisterNode(String nodeId) {
-        List<NodeFile> nodeFiles = nodeFileMapper.selectList(
-                new LambdaQueryWrapper<NodeFile>()
-                        .eq(NodeFile::getNodeId, nodeId)
-        );
-        List<String> affectedHashes = nodeFiles.stream()
-                .map(NodeFile::getFileHash)
-                .distinct()
-                .collect(Collectors.toList());
-
-        nodeFileMapper.delete(
-                new LambdaQueryWrapper<NodeFile>()
-                        .eq(NodeFile::getNodeId, nodeId)
-        );
+        unregisterNodes(Collections.singletonList(nodeId));
+    }
 
-        for (String fileHash : affectedHashes) {
-            fileIndexService.updateFileNodeCount(fileHash);
+    @Override
+    public void unregisterNodes(Collection<String> nodeIds) {
+        if (nodeIds == null || nodeIds.isEmpty()) {
+            return;
         }
 
-        NodeInfo nodeInfo = nodeInfoMapper.selectOne(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getNodeId, nodeId)
-        );
-        if (nodeInfo != null) {
-            nodeInfo.setActive(false);
-            nodeInfo.setUpdateTime(LocalDateTime.now());
-            nodeInfoMapper.updateById(nodeInfo);
+        indexStore.removeNodes(nodeIds);
+
+        for (String nodeId : nodeIds) {
+            heartbeatFlushTask.discard(nodeId);
+            livenessTracker.forget(nodeId);
+            registrationVersions.remove(nodeId);
+            registerSessions.remove(nodeId);
+            restoredNodes.remove(nodeId);
         }
+        nodeIds.forEach(fileIndex::removeNode);
     }
 
     @Override
     public void updateHeartbeat(String nodeId) {
-        NodeInfo nodeInfo = nodeInfoMapper.selectOne(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getNodeId, nodeId)
-        );
-        if (nodeInfo != null) {
-            nodeInfo.setLastHeartbeat(LocalDateTime.now());
-            nodeInfo.setActive(true);
-            nodeInfo.setUpdateTime(LocalDateTime.now());
-            nodeInfoMapper.updateById(nodeInfo);
-        }
+        heartbeatFlushTask.record(nodeId);
+        livenessTracker.touch(nodeId);
     }
 
     @Override
     public boolean isNodeActive(String nodeId) {
-        NodeInfo nodeInfo = nodeInfoMapper.selectOne(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getNodeId, nodeId)
-        );
-        return nodeInfo != null && Boolean.TRUE.equals(nodeInfo.getActive());
+        return presenceRegistry.isOnline(nodeId);
     }
 
     @Override
     public List<String> getActiveNodeIds() {
-        List<NodeInfo> activeNodes = nodeInfoMapper.selectList(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getActive, true)
-        );
-        return activeNodes.stream()
-                .map(NodeInfo::getNodeId)
-                .collect(Collectors.toList());
+        return presenceRegistry.onlineNodeIds();
+    }
+
+    /**
+     * 分块注册会话，只由该节点串行执行的注册任务修改；staged 为 null 表示已提交。
+     * staged 在提交前按已上报的文件数增长，每个文件一个引用槽位，未提交的会话空闲超时后释放
+     */
+    private static final class RegisterSession {
+
+        final String id;
+        volatile FileIndex.StagedFiles staged;
+        volatile long lastActive = System.currentTimeMillis();
+        long lastSeq;
+        long fileCount;
+        long removed;
+
+        RegisterSession(String id, FileIndex.StagedFiles staged) {
+            this.id = id;
+            this.staged = staged;
+        }
+
+        RegisterSessionAck ack() {
+            RegisterSessionAck ack = new RegisterSessionAck();
+            ack.setSessionId(id);
+            ack.setSeq(lastSeq);
+            ack.setFileCount(staged != null ? staged.size() : fileCount);
+            ack.setResync(false);
+            if (staged == null) {
+                ack.setRemoved(removed);
+            }
+            return ack;
+        }
     }
 }
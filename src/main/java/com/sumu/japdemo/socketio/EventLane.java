@@ -0,0 +1,19 @@
+package com.sumu.japdemo.socketio;
+
+/**
+ * 事件执行通道，各通道有独立的工作线程和排队上限，互不抢占
+ */
+public enum EventLane {
+    /**
+     * WebRTC 信令转发与心跳，延迟敏感，排队上限最大
+     */
+    SIGNAL,
+    /**
+     * 搜索与下载节点查询
+     */
+    QUERY,
+    /**
+     * 连接/断开、文件注册等批量写库操作
+     */
+    BULK
+}
@@ -0,0 +1,278 @@
+package com.sumu.japdemo.socketio;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 把事件处理从 netty-socketio 的 IO 线程移到有界的工作线程池上执行。
+ * 事件按 EventLane 分到独立的线程池，信令不会排在批量注册后面 (隔离靠独立的线程和排队上限，
+ * 不设线程优先级: Linux 上的 HotSpot 默认忽略 Java 线程优先级)；
+ * 同一通道内同一节点的任务按提交顺序串行执行 (注册/注销不会乱序)，不同节点之间并行；
+ * 排队任务总数或单个节点的排队数超过上限时拒绝新任务，由调用方回复 server-busy
+ */
+@Component
+public class NodeEventDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeEventDispatcher.class);
+
+    @Value("${p2p.dispatch.signal.workers:4}")
+    private int signalWorkers;
+
+    @Value("${p2p.dispatch.signal.max-pending:20000}")
+    private int signalMaxPending;
+
+    @Value("${p2p.dispatch.signal.max-pending-per-node:256}")
+    private int signalMaxPendingPerNode;
+
+    @Value("${p2p.dispatch.query.workers:8}")
+    private int queryWorkers;
+
+    @Value("${p2p.dispatch.query.max-pending:5000}")
+    private int queryMaxPending;
+
+    @Value("${p2p.dispatch.query.max-pending-per-node:16}")
+    private int queryMaxPendingPerNode;
+
+    @Value("${p2p.dispatch.bulk.workers:8}")
+    private int bulkWorkers;
+
+    @Value("${p2p.dispatch.bulk.max-pending:2000}")
+    private int bulkMaxPending;
+
+    @Value("${p2p.dispatch.bulk.max-pending-per-node:16}")
+    private int bulkMaxPendingPerNode;
+
+    /**
+     * 每次调度最多连续执行同一节点的任务数，避免单个节点长期占住工作线程
+     */
+    @Value("${p2p.dispatch.drain-batch:16}")
+    private int drainBatch;
+
+    private final Map<EventLane, LaneExecutor> lanes = new EnumMap<>(EventLane.class);
+
+    @PostConstruct
+    public void start() {
+        lanes.put(EventLane.SIGNAL, new LaneExecutor(EventLane.SIGNAL, signalWorkers,
+                signalMaxPending, signalMaxPendingPerNode));
+        lanes.put(EventLane.QUERY, new LaneExecutor(EventLane.QUERY, queryWorkers,
+                queryMaxPending, queryMaxPendingPerNode));
+        lanes.put(EventLane.BULK, new LaneExecutor(EventLane.BULK, bulkWorkers,
+                bulkMaxPending, bulkMaxPendingPerNode));
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (LaneExecutor lane : lanes.values()) {
+            lane.executor.shutdown();
+        }
+        for (LaneExecutor lane : lanes.values()) {
+            if (!lane.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("{} 通道关闭超时, 仍有 {} 个任务未执行", lane.lane, lane.pending.get());
+                lane.executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * 提交可丢弃的任务 (搜索、注册等)，队列已满时返回 false
+     */
+    public boolean submit(EventLane lane, String nodeId, Runnable task) {
+        return lanes.get(lane).enqueue(nodeId, task, false);
+    }
+
+    /**
+     * 提交不能丢弃的任务 (连接、断开)，不受排队上限限制，但仍与该节点在同一通道的其他任务保持顺序
+     */
+    public void submitRequired(EventLane lane, String nodeId, Runnable task) {
+        lanes.get(lane).enqueue(nodeId, task, true);
+    }
+
+    public int pendingCount(EventLane lane) {
+        return lanes.get(lane).pending.get();
+    }
+
+    /**
+     * 各通道的排队深度、拒绝数和排队等待时间
+     */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (LaneExecutor lane : lanes.values()) {
+            stats.put(lane.lane.name().toLowerCase(), lane.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 单个通道：独立的线程池、排队上限和统计
+     */
+    private final class LaneExecutor {
+
+        private final EventLane lane;
+
+        private final int maxPending;
+
+        private final int maxPendingPerNode;
+
+        private final ExecutorService executor;
+
+        private final ConcurrentHashMap<String, NodeQueue> queues = new ConcurrentHashMap<>();
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private final AtomicLong rejected = new AtomicLong();
+
+        private final LongAdder completed = new LongAdder();
+
+        private final LongAdder totalWaitNanos = new LongAdder();
+
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private LaneExecutor(EventLane lane, int workers, int maxPending, int maxPendingPerNode) {
+            this.lane = lane;
+            this.maxPending = maxPending;
+            this.maxPendingPerNode = maxPendingPerNode;
+            this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(),
+                    new DefaultThreadFactory("event-" + lane.name().toLowerCase(), true));
+        }
+
+        private boolean enqueue(String nodeId, Runnable task, boolean required) {
+            if (pending.incrementAndGet() > maxPending && !required) {
+                pending.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            QueuedTask queued = new QueuedTask(task, System.nanoTime());
+            boolean[] accepted = {true};
+            boolean[] schedule = {false};
+            NodeQueue nodeQueue = queues.compute(nodeId, (key, queue) -> {
+                if (queue == null) {
+                    queue = new NodeQueue(this, key);
+                } else if (!required && queue.size.get() >= maxPendingPerNode) {
+                    accepted[0] = false;
+                    return queue;
+                }
+                queue.tasks.add(queued);
+                queue.size.incrementAndGet();
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    schedule[0] = true;
+                }
+                return queue;
+            });
+            if (!accepted[0]) {
+                pending.decrementAndGet();
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (schedule[0]) {
+                executor.execute(nodeQueue);
+            }
+            return true;
+        }
+
+        private void recordWait(long waitNanos) {
+            completed.increment();
+            totalWaitNanos.add(waitNanos);
+            long max;
+            while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+                // 重试直到写入更大的值
+            }
+        }
+
+        private Map<String, Object> stats() {
+            long count = completed.sum();
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("queueDepth", pending.get());
+            stats.put("activeNodes", queues.size());
+            stats.put("completed", count);
+            stats.put("rejected", rejected.get());
+            stats.put("avgWaitMs", count == 0 ? 0.0 : totalWaitNanos.sum() / 1e6 / count);
+            stats.put("maxWaitMs", maxWaitNanos.get() / 1e6);
+            return stats;
+        }
+    }
+
+    private static final class QueuedTask {
+
+        private final Runnable task;
+
+        private final long enqueuedAt;
+
+        private QueuedTask(Runnable task, long enqueuedAt) {
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * 通道内单个节点的任务队列，任一时刻最多只有一个工作线程在执行它
+     */
+    private final class NodeQueue implements Runnable {
+
+        private final LaneExecutor owner;
+
+        private final String nodeId;
+
+        private final Queue<QueuedTask> tasks = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * 只在 queues.compute 中读写
+         */
+        private boolean scheduled;
+
+        private NodeQueue(LaneExecutor owner, String nodeId) {
+            this.owner = owner;
+            this.nodeId = nodeId;
+        }
+
+        @Override
+        public void run() {
+            QueuedTask queued;
+            for (int i = 0; i < drainBatch && (queued = tasks.poll()) != null; i++) {
+                size.decrementAndGet();
+                owner.pending.decrementAndGet();
+                owner.recordWait(System.nanoTime() - queued.enqueuedAt);
+                try {
+                    queued.task.run();
+                } catch (Exception e) {
+                    logger.error("节点 {} 的 {} 事件处理失败", nodeId, owner.lane, e);
+                }
+            }
+            boolean[] reschedule = {false};
+            owner.queues.compute(nodeId, (key, queue) -> {
+                if (tasks.isEmpty()) {
+                    scheduled = false;
+                    return null;
+                }
+                reschedule[0] = true;
+                return queue;
+            });
+            if (reschedule[0]) {
+                // 重新排到线程池队尾，让其他节点的任务有机会执行
+                owner.executor.execute(this);
+            }
+        }
+    }
+}
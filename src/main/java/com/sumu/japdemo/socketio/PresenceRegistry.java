@@ -0,0 +1,79 @@
+package com.sumu.japdemo.socketio;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 节点在线状态的唯一来源：由连接/恢复/断开事件维护，查询不访问数据库也不解析会话 UUID
+ */
+@Component
+public class PresenceRegistry {
+
+    private final Set<String> online = ConcurrentHashMap.newKeySet();
+
+    private final List<PresenceListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 节点上线或下线时回调，在触发状态变化的线程中同步执行，应尽量轻量
+     */
+    public interface PresenceListener {
+        void onPresenceChanged(String nodeId, boolean online);
+    }
+
+    public void addListener(PresenceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void markOnline(String nodeId) {
+        if (online.add(nodeId)) {
+            fire(nodeId, true);
+        }
+    }
+
+    public void markOffline(String nodeId) {
+        if (online.remove(nodeId)) {
+            fire(nodeId, false);
+        }
+    }
+
+    public boolean isOnline(String nodeId) {
+        return nodeId != null && online.contains(nodeId);
+    }
+
+    /**
+     * 按原有顺序保留在线的节点
+     */
+    public List<String> filterOnline(Collection<String> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(nodeIds.size());
+        for (String nodeId : nodeIds) {
+            if (online.contains(nodeId)) {
+                result.add(nodeId);
+            }
+        }
+        return result;
+    }
+
+    public List<String> onlineNodeIds() {
+        return new ArrayList<>(online);
+    }
+
+    public int size() {
+        return online.size();
+    }
+
+    private void fire(String nodeId, boolean isOnline) {
+        for (PresenceListener listener : listeners) {
+            listener.onPresenceChanged(nodeId, isOnline);
+        }
+    }
+}
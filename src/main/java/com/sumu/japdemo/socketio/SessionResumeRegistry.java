@@ -0,0 +1,207 @@
+package com.sumu.japdemo.socketio;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 会话恢复：节点首次连接时签发恢复令牌，断线后在宽限期内带着令牌重连即可恢复原节点 ID 和已注册的文件，
+ * 不产生任何数据库写入；宽限期过后才真正注销节点
+ */
+@Component
+public class SessionResumeRegistry {
+
+    private static final int TOKEN_BYTES = 16;
+
+    @Value("${p2p.session.resume-grace-ms:60000}")
+    private long graceMs;
+
+    @Autowired
+    private SessionRoutingTable routingTable;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ConcurrentHashMap<String, Session> byToken = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Session> byNode = new ConcurrentHashMap<>();
+
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 签发令牌和令牌作废时回调
+     */
+    public interface SessionListener {
+
+        void onSessionOpened(String nodeId, String token);
+
+        void onSessionClosed(String nodeId);
+    }
+
+    public void addListener(SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isEnabled() {
+        return graceMs > 0;
+    }
+
+    public long getGraceMs() {
+        return graceMs;
+    }
+
+    /**
+     * 为新节点签发令牌并登记路由
+     */
+    public String open(String nodeId, SocketIOClient client) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        Session session = new Session(nodeId, Base64.getUrlEncoder().withoutPadding().encodeToString(bytes));
+        byToken.put(session.token, session);
+        byNode.put(nodeId, session);
+        routingTable.bind(nodeId, client);
+        presenceRegistry.markOnline(nodeId);
+        for (SessionListener listener : listeners) {
+            listener.onSessionOpened(nodeId, session.token);
+        }
+        return session.token;
+    }
+
+    /**
+     * 重启后恢复上次运行签发的令牌，节点处于离线状态，需在宽限期内重连
+     */
+    public void restore(String nodeId, String token) {
+        Session session = new Session(nodeId, token);
+        byToken.put(token, session);
+        byNode.put(nodeId, session);
+    }
+
+    /**
+     * 当前全部未作废的令牌 (节点 ID -> 令牌)
+     */
+    public Map<String, String> tokens() {
+        Map<String, String> tokens = new HashMap<>(byNode.size() * 2);
+        for (Session session : byNode.values()) {
+            tokens.put(session.nodeId, session.token);
+        }
+        return tokens;
+    }
+
+    /**
+     * 用令牌恢复节点，返回原节点 ID；令牌未知或节点已被注销时返回 null。
+     * 旧连接如果还没断开会被关闭，新连接接管路由
+     */
+    public String resume(String token, SocketIOClient client) {
+        Session session = token == null ? null : byToken.get(token);
+        if (session == null) {
+            return null;
+        }
+        SocketIOClient previous;
+        synchronized (session) {
+            if (session.closed) {
+                return null;
+            }
+            previous = routingTable.lookup(session.nodeId);
+            routingTable.bind(session.nodeId, client);
+            presenceRegistry.markOnline(session.nodeId);
+        }
+        if (previous != null && previous != client) {
+            previous.disconnect();
+        }
+        return session.nodeId;
+    }
+
+    /**
+     * 连接断开，返回 false 表示该节点已在新连接上恢复，这次断开不需要处理
+     */
+    public boolean suspend(String nodeId, SocketIOClient client) {
+        Session session = byNode.get(nodeId);
+        if (session == null) {
+            return unbind(nodeId, client);
+        }
+        synchronized (session) {
+            return unbind(nodeId, client);
+        }
+    }
+
+    /**
+     * 宽限期到期时调用：节点仍未重连则作废令牌并返回 true，之后不能再恢复；已重连返回 false
+     */
+    public boolean expire(String nodeId) {
+        Session session = byNode.get(nodeId);
+        if (session == null) {
+            return !presenceRegistry.isOnline(nodeId);
+        }
+        synchronized (session) {
+            if (presenceRegistry.isOnline(nodeId)) {
+                return false;
+            }
+            close(session);
+            return true;
+        }
+    }
+
+    /**
+     * 节点被直接注销 (未启用宽限期) 时作废令牌
+     */
+    public void forget(String nodeId) {
+        Session session = byNode.get(nodeId);
+        if (session != null) {
+            synchronized (session) {
+                close(session);
+            }
+        }
+    }
+
+    public int size() {
+        return byNode.size();
+    }
+
+    private boolean unbind(String nodeId, SocketIOClient client) {
+        if (!routingTable.unbind(nodeId, client)) {
+            return false;
+        }
+        presenceRegistry.markOffline(nodeId);
+        return true;
+    }
+
+    private void close(Session session) {
+        if (session.closed) {
+            return;
+        }
+        session.closed = true;
+        byToken.remove(session.token, session);
+        byNode.remove(session.nodeId, session);
+        for (SessionListener listener : listeners) {
+            listener.onSessionClosed(session.nodeId);
+        }
+    }
+
+    private static final class Session {
+
+        private final String nodeId;
+
+        private final String token;
+
+        /**
+         * 只在 synchronized (this) 中读写
+         */
+        private boolean closed;
+
+        private Session(String nodeId, String token) {
+            this.nodeId = nodeId;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sumu.japdemo.socketio;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 节点 ID 到客户端连接的路由表，连接时登记、断开时移除，
+ * 信令转发按节点 ID 直接查表，不再遍历全部连接
+ */
+@Component
+public class SessionRoutingTable {
+
+    private static final String NODE_ID_KEY = "nodeId";
+
+    private final ConcurrentHashMap<String, SocketIOClient> routes = new ConcurrentHashMap<>();
+
+    /**
+     * 登记节点的连接，并把节点 ID 记在连接上，之后的事件不必再从会话 UUID 转换
+     */
+    public void bind(String nodeId, SocketIOClient client) {
+        client.set(NODE_ID_KEY, nodeId);
+        routes.put(nodeId, client);
+    }
+
+    /**
+     * 只移除仍指向该连接的路由，节点已在新连接上重新登记时不会误删，此时返回 false
+     */
+    public boolean unbind(String nodeId, SocketIOClient client) {
+        return routes.remove(nodeId, client);
+    }
+
+    public SocketIOClient lookup(String nodeId) {
+        return nodeId == null ? null : routes.get(nodeId);
+    }
+
+    public String nodeIdOf(SocketIOClient client) {
+        String nodeId = client.get(NODE_ID_KEY);
+        return nodeId != null ? nodeId : client.getSessionId().toString();
+    }
+
+    public int size() {
+        return routes.size();
+    }
+}
@@ -0,0 +1,127 @@
+package com.sumu.japdemo.socketio;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import com.sumu.japdemo.entity.dto.WebRtcSignal;
+import com.sumu.japdemo.entity.dto.WebRtcSignalBatch;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发往同一目标节点的信令合并发送。
+ * coalesce-ms 为 0 时立即发送；大于 0 时目标的第一条信令到达后等待一个窗口，
+ * 窗口内到达的信令 (可能来自不同发送方) 合并为一个 webrtc-signal-batch 包。
+ * 只有已知支持 webrtc-signal-batch 的目标 (见 markBatchCapable) 才会收到批量包，其他目标逐条收到 webrtc-signal
+ */
+@Component
+public class SignalCoalescer {
+
+    private static final String BATCH_CAPABLE_KEY = "signalBatch";
+
+    @Value("${p2p.signal.coalesce-ms:0}")
+    private long coalesceMs;
+
+    @Autowired
+    private SessionRoutingTable routingTable;
+
+    private final ConcurrentHashMap<String, List<WebRtcSignal>> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void start() {
+        if (coalesceMs > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("signal-coalesce", true));
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 连接在握手参数中声明了 signalBatch，或自己发送过 webrtc-signal-batch
+     */
+    public static void markBatchCapable(SocketIOClient client) {
+        client.set(BATCH_CAPABLE_KEY, Boolean.TRUE);
+    }
+
+    private static boolean isBatchCapable(SocketIOClient client) {
+        return Boolean.TRUE.equals(client.get(BATCH_CAPABLE_KEY));
+    }
+
+    /**
+     * 发送给 targetUserId 的一组信令，每条都已填好 fromUserId
+     */
+    public void send(String targetUserId, List<WebRtcSignal> signals) {
+        if (signals.isEmpty()) {
+            return;
+        }
+        if (scheduler == null) {
+            deliver(targetUserId, signals);
+            return;
+        }
+        SocketIOClient targetClient = routingTable.lookup(targetUserId);
+        if (targetClient == null) {
+            return;
+        }
+        if (!isBatchCapable(targetClient)) {
+            // 不支持批量包的目标合并也只能逐条发送，不必等待窗口
+            deliver(targetClient, signals);
+            return;
+        }
+        boolean[] first = {false};
+        pending.compute(targetUserId, (key, buffered) -> {
+            if (buffered == null) {
+                buffered = new ArrayList<>(signals.size());
+                first[0] = true;
+            }
+            buffered.addAll(signals);
+            return buffered;
+        });
+        if (first[0]) {
+            scheduler.schedule(() -> flush(targetUserId), coalesceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(String targetUserId) {
+        List<WebRtcSignal> signals = pending.remove(targetUserId);
+        if (signals != null) {
+            deliver(targetUserId, signals);
+        }
+    }
+
+    private void deliver(String targetUserId, List<WebRtcSignal> signals) {
+        SocketIOClient targetClient = routingTable.lookup(targetUserId);
+        if (targetClient != null) {
+            deliver(targetClient, signals);
+        }
+    }
+
+    private void deliver(SocketIOClient targetClient, List<WebRtcSignal> signals) {
+        if (signals.size() == 1 || !isBatchCapable(targetClient)) {
+            // 单条信令和发往旧客户端的信令保持原有格式 { fromUserId, signal }
+            for (WebRtcSignal signal : signals) {
+                targetClient.sendEvent("webrtc-signal", signal);
+            }
+        } else {
+            // 与上行的 webrtc-signal-batch 同为 { signals: [...] }
+            WebRtcSignalBatch batch = new WebRtcSignalBatch();
+            batch.setSignals(signals);
+            targetClient.sendEvent("webrtc-signal-batch", batch);
+        }
+    }
+}
@@ -2,23 +2,35 @@ package com.sumu.japdemo.socketio;
 
 import com.corundumstudio.socketio.AckRequest;
 import com.corundumstudio.socketio.SocketIOClient;
-import com.corundumstudio.socketio.SocketIOServer;
 import com.corundumstudio.socketio.annotation.OnConnect;
 import com.corundumstudio.socketio.annotation.OnDisconnect;
 import com.corundumstudio.socketio.annotation.OnEvent;
-import com.sumu.japdemo.entity.dto.DownloadResult;
+import com.sumu.japdemo.cache.DownloadResultCache;
 import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.entity.dto.FileRegisterDelta;
 import com.sumu.japdemo.entity.dto.FileSearchResult;
+import com.sumu.japdemo.entity.dto.RegisterAck;
+import com.sumu.japdemo.entity.dto.RegisterChunk;
+import com.sumu.japdemo.entity.dto.RegisterCommit;
+import com.sumu.japdemo.entity.dto.RegisterSessionAck;
+import com.sumu.japdemo.entity.dto.SearchPage;
+import com.sumu.japdemo.entity.dto.SearchRequest;
 import com.sumu.japdemo.entity.dto.WebRtcSignal;
+import com.sumu.japdemo.entity.dto.WebRtcSignalBatch;
 import com.sumu.japdemo.service.FileIndexService;
 import com.sumu.japdemo.service.NodeManagerService;
+import com.sumu.japdemo.utils.BinaryWireCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -27,8 +39,19 @@ public class SignalingSocketIOModule {
 
     private static final Logger logger = LoggerFactory.getLogger(SignalingSocketIOModule.class);
 
+    /**
+     * 连接上记录协商结果，握手参数 encoding=binary 且服务端开启时为 true
+     */
+    private static final String BINARY_WIRE_KEY = "binaryWire";
+
+    @Value("${p2p.wire.binary.enabled:true}")
+    private boolean binaryEnabled;
+
+    @Autowired
+    private SessionRoutingTable routingTable;
+
     @Autowired
-    private SocketIOServer server;
+    private SessionResumeRegistry resumeRegistry;
 
     @Autowired
     private NodeManagerService nodeManagerService;
@@ -36,34 +59,76 @@ public class SignalingSocketIOModule {
     @Autowired
     private FileIndexService fileIndexService;
 
+    @Autowired
+    private NodeEventDispatcher dispatcher;
+
+    @Autowired
+    private SignalCoalescer signalCoalescer;
+
+    @Autowired
+    private DownloadResultCache downloadResultCache;
+
     @OnConnect
     public void onConnect(SocketIOClient client) {
-        String nodeId = client.getSessionId().toString();
         InetSocketAddress remoteAddress = (InetSocketAddress) client.getRemoteAddress();
         String ipAddress = remoteAddress.getAddress().getHostAddress();
 
+        String resumeToken = client.getHandshakeData().getSingleUrlParam("resumeToken");
+        if (binaryEnabled && "binary".equals(client.getHandshakeData().getSingleUrlParam("encoding"))) {
+            client.set(BINARY_WIRE_KEY, Boolean.TRUE);
+        }
+        if ("true".equals(client.getHandshakeData().getSingleUrlParam("signalBatch"))) {
+            SignalCoalescer.markBatchCapable(client);
+        }
+        String resumedNodeId = resumeRegistry.isEnabled() ? resumeRegistry.resume(resumeToken, client) : null;
+        if (resumedNodeId != null) {
+            logger.info("用户恢复会话: {} 来自 {}", resumedNodeId, ipAddress);
+
+            nodeManagerService.resumeNode(resumedNodeId);
+            dispatcher.submitRequired(EventLane.BULK, resumedNodeId,
+                    () -> nodeManagerService.writeBackRestoredNode(resumedNodeId, ipAddress));
+            sendSession(client, resumedNodeId, resumeToken, true);
+            return;
+        }
+
+        String nodeId = client.getSessionId().toString();
+
         logger.info("用户连接: {} 来自 {}", nodeId, ipAddress);
 
-        nodeManagerService.registerNode(nodeId, ipAddress);
+        String newToken = resumeRegistry.open(nodeId, client);
+        dispatcher.submitRequired(EventLane.BULK, nodeId, () -> nodeManagerService.registerNode(nodeId, ipAddress));
+        sendSession(client, nodeId, newToken, false);
     }
 
     @OnDisconnect
     public void onDisconnect(SocketIOClient client) {
-        String nodeId = client.getSessionId().toString();
+        String nodeId = routingTable.nodeIdOf(client);
+
+        if (!resumeRegistry.suspend(nodeId, client)) {
+            // 节点已经在新连接上恢复，旧连接的断开不影响节点
+            return;
+        }
+        if (resumeRegistry.isEnabled()) {
+            logger.info("用户断开连接: {}, {} ms 内可恢复会话", nodeId, resumeRegistry.getGraceMs());
+
+            nodeManagerService.suspendNode(nodeId, resumeRegistry.getGraceMs());
+            return;
+        }
 
         logger.info("用户断开连接: {}", nodeId);
 
-        nodeManagerService.unregisterNode(nodeId);
+        resumeRegistry.forget(nodeId);
+        dispatcher.submitRequired(EventLane.BULK, nodeId, () -> nodeManagerService.unregisterNode(nodeId));
     }
 
     @OnEvent("register-files")
     public void onRegisterFiles(SocketIOClient client, AckRequest ack, List<Map<String, Object>> files) {
-        String nodeId = client.getSessionId().toString();
+        String nodeId = routingTable.nodeIdOf(client);
 
         logger.info("用户 {} 注册文件: {}", nodeId, files != null ? files.size() : 0);
 
         if (files != null && !files.isEmpty()) {
-            List<FileRegister> fileList = new java.util.ArrayList<>();
+            List<FileRegister> fileList = new ArrayList<>();
             for (Map<String, Object> file : files) {
                 FileRegister fr = new FileRegister();
                 fr.setHash(String.valueOf(file.get("hash")));
@@ -76,84 +141,267 @@ public class SignalingSocketIOModule {
                 }
                 fileList.add(fr);
             }
-            nodeManagerService.registerFiles(nodeId, fileList);
+            dispatch(client, nodeId, EventLane.BULK, "register-files", () -> {
+                nodeManagerService.registerFiles(nodeId, fileList);
+                client.sendEvent("register-files-ack", RegisterAck.applied(0));
+            });
+        }
+    }
+
+    /**
+     * 协商为 binary 的连接的全量注册，数据为 BinaryWireCodec 编码的二进制附件，直接解码为 FileRegister
+     */
+    @OnEvent("register-files-bin")
+    public void onRegisterFilesBinary(SocketIOClient client, AckRequest ack, byte[] data) {
+        String nodeId = routingTable.nodeIdOf(client);
+
+        List<FileRegister> fileList;
+        try {
+            fileList = BinaryWireCodec.decodeRegisters(data);
+        } catch (IllegalArgumentException e) {
+            logger.warn("用户 {} 的二进制注册数据无法解码: {}", nodeId, e.getMessage());
+            return;
+        }
+
+        logger.info("用户 {} 注册文件 (二进制): {}", nodeId, fileList.size());
+
+        if (!fileList.isEmpty()) {
+            dispatch(client, nodeId, EventLane.BULK, "register-files-bin", () -> {
+                nodeManagerService.registerFiles(nodeId, fileList);
+                client.sendEvent("register-files-ack", RegisterAck.applied(0));
+            });
+        }
+    }
+
+    @OnEvent("register-files-delta")
+    public void onRegisterFilesDelta(SocketIOClient client, AckRequest ack, FileRegisterDelta delta) {
+        String nodeId = routingTable.nodeIdOf(client);
+
+        if (delta == null) {
+            return;
         }
+        logger.info("用户 {} 增量注册 v{}: +{} -{}", nodeId, delta.getVersion(),
+                delta.getAdded() != null ? delta.getAdded().size() : 0,
+                delta.getRemoved() != null ? delta.getRemoved().size() : 0);
+
+        dispatch(client, nodeId, EventLane.BULK, "register-files-delta", () -> {
+            RegisterAck result = nodeManagerService.applyFileDelta(nodeId, delta);
+            if (Boolean.TRUE.equals(result.getResync())) {
+                logger.warn("用户 {} 增量注册版本不连续: 收到 v{}, 当前 v{}, 要求全量重新注册", nodeId, delta.getVersion(), result.getVersion());
+                client.sendEvent("register-files-resync", result);
+            } else {
+                client.sendEvent("register-files-ack", result);
+            }
+        });
+    }
+
+    @OnEvent("register-begin")
+    public void onRegisterBegin(SocketIOClient client, AckRequest ack) {
+        String nodeId = routingTable.nodeIdOf(client);
+
+        logger.info("用户 {} 开始分块注册", nodeId);
+
+        dispatch(client, nodeId, EventLane.BULK, "register-begin",
+                () -> client.sendEvent("register-begin-ack", nodeManagerService.beginRegistration(nodeId)));
+    }
+
+    @OnEvent("register-chunk")
+    public void onRegisterChunk(SocketIOClient client, AckRequest ack, RegisterChunk chunk) {
+        String nodeId = routingTable.nodeIdOf(client);
+
+        if (chunk == null) {
+            return;
+        }
+        logger.debug("用户 {} 分块注册 #{}: {} 个文件", nodeId, chunk.getSeq(),
+                chunk.getFiles() != null ? chunk.getFiles().size() : 0);
+
+        dispatch(client, nodeId, EventLane.BULK, "register-chunk", () -> {
+            RegisterSessionAck result = nodeManagerService.applyRegisterChunk(nodeId, chunk);
+            sendRegisterAck(client, nodeId, "register-chunk-ack", result);
+        });
+    }
+
+    @OnEvent("register-commit")
+    public void onRegisterCommit(SocketIOClient client, AckRequest ack, RegisterCommit commit) {
+        String nodeId = routingTable.nodeIdOf(client);
+
+        if (commit == null) {
+            return;
+        }
+        dispatch(client, nodeId, EventLane.BULK, "register-commit", () -> {
+            RegisterSessionAck result = nodeManagerService.commitRegistration(nodeId, commit);
+            if (!Boolean.TRUE.equals(result.getResync())) {
+                logger.info("用户 {} 分块注册完成: {} 块, {} 个文件, 移除 {} 个旧文件", nodeId,
+                        result.getSeq(), result.getFileCount(), result.getRemoved());
+            }
+            sendRegisterAck(client, nodeId, "register-commit-ack", result);
+        });
     }
 
     @OnEvent("unregister-files")
     public void onUnregisterFiles(SocketIOClient client, AckRequest ack, List<String> hashes) {
-        String nodeId = client.getSessionId().toString();
+        String nodeId = routingTable.nodeIdOf(client);
 
         logger.info("用户 {} 取消注册文件: {}", nodeId, hashes);
 
         if (hashes != null && !hashes.isEmpty()) {
-            nodeManagerService.unregisterFiles(nodeId, hashes);
-            logger.info("用户 {} 取消注册了 {} 个文件", nodeId, hashes.size());
+            dispatch(client, nodeId, EventLane.BULK, "unregister-files", () -> {
+                nodeManagerService.unregisterFiles(nodeId, hashes);
+                logger.info("用户 {} 取消注册了 {} 个文件", nodeId, hashes.size());
+            });
         }
     }
 
     @OnEvent("search-files")
     public void onSearchFiles(SocketIOClient client, AckRequest ack, String query) {
-        String nodeId = client.getSessionId().toString();
+        String nodeId = routingTable.nodeIdOf(client);
 
         logger.info("用户 {} 搜索文件: {}", nodeId, query);
 
-        List<FileSearchResult> results = fileIndexService.searchFiles(query);
-        client.sendEvent("search-results", results);
+        dispatch(client, nodeId, EventLane.QUERY, "search-files", () -> {
+            List<FileSearchResult> results = fileIndexService.searchFiles(query);
+            if (isBinary(client)) {
+                client.sendEvent("search-results", BinaryWireCodec.encodeSearchResults(results));
+            } else {
+                client.sendEvent("search-results", results);
+            }
+
+            logger.info("搜索结果: 找到 {} 个匹配文件", results.size());
+        });
+    }
+
+    @OnEvent("search-files-page")
+    public void onSearchFilesPage(SocketIOClient client, AckRequest ack, SearchRequest request) {
+        String nodeId = routingTable.nodeIdOf(client);
+
+        logger.info("用户 {} 分页搜索文件: {}", nodeId, request != null ? request.getQuery() : null);
+
+        if (request == null) {
+            return;
+        }
+        dispatch(client, nodeId, EventLane.QUERY, "search-files-page", () -> {
+            SearchPage page = fileIndexService.searchFilesPage(request);
+            if (isBinary(client)) {
+                client.sendEvent("search-results-page", BinaryWireCodec.encodeSearchPage(page));
+            } else {
+                client.sendEvent("search-results-page", page);
+            }
 
-        logger.info("搜索结果: 找到 {} 个匹配文件", results.size());
+            logger.info("分页搜索结果: 本页 {} 个, 约 {} 个匹配文件", page.getResults().size(), page.getTotalEstimate());
+        });
     }
 
     @OnEvent("request-download")
     public void onRequestDownload(SocketIOClient client, AckRequest ack, String fileHash) {
-        String nodeId = client.getSessionId().toString();
+        String nodeId = routingTable.nodeIdOf(client);
 
         logger.info("用户 {} 请求下载文件: {}", nodeId, fileHash);
 
-        DownloadResult result = fileIndexService.getDownloadNodes(fileHash);
-
-        if (result != null && result.getNodeCount() > 0) {
-            client.sendEvent("download-nodes-found", result);
-            logger.info("为用户 {} 找到文件 {} 的 {} 个下载节点", nodeId, fileHash, result.getNodeCount());
-        } else {
-            Map<String, String> error = new HashMap<>();
-            error.put("fileHash", fileHash);
-            error.put("error", result == null ? "文件未在索引中找到" : "没有节点拥有该文件");
-            client.sendEvent("download-nodes-not-found", error);
-        }
+        dispatch(client, nodeId, EventLane.QUERY, "request-download", () -> {
+            DownloadResultCache.Payload payload = downloadResultCache.get(fileHash, fileIndexService::getDownloadNodes);
+            if (isBinary(client) && payload.getBinaryBody() != null) {
+                client.sendEvent(payload.getEvent(), payload.getBinaryBody());
+            } else {
+                client.sendEvent(payload.getEvent(), payload.getBody());
+            }
+            if (payload.isFound()) {
+                logger.info("为用户 {} 找到文件 {} 的 {} 个下载节点", nodeId, fileHash, payload.getNodeCount());
+            }
+        });
     }
 
     @OnEvent("webrtc-signal")
-    public void onWebrtcSignal(SocketIOClient client, AckRequest ack, Map<String, Object> data) {
-        String fromUserId = client.getSessionId().toString();
-        String targetUserId = String.valueOf(data.get("targetUserId"));
-        Object signalData = data.get("signal");
+    public void onWebrtcSignal(SocketIOClient client, AckRequest ack, WebRtcSignal signal) {
+        if (signal == null) {
+            return;
+        }
+        String fromUserId = routingTable.nodeIdOf(client);
+        String targetUserId = signal.getTargetUserId();
+        if (targetUserId == null) {
+            logger.debug("用户 {} 的WebRTC信令缺少 targetUserId，已丢弃", fromUserId);
+            return;
+        }
 
         logger.debug("转发WebRTC信令: {} -> {}", fromUserId, targetUserId);
 
-        SocketIOClient targetClient = findClient(targetUserId);
-        if (targetClient != null) {
-            Map<String, Object> forwardData = new HashMap<>();
-            forwardData.put("fromUserId", fromUserId);
-            forwardData.put("signal", signalData);
-            targetClient.sendEvent("webrtc-signal", forwardData);
+        // 直接复用收到的对象作为转发内容，signal 按原始字节写出
+        signal.setTargetUserId(null);
+        signal.setFromUserId(fromUserId);
+        dispatch(client, fromUserId, EventLane.SIGNAL, "webrtc-signal",
+                () -> signalCoalescer.send(targetUserId, Collections.singletonList(signal)));
+    }
+
+    @OnEvent("webrtc-signal-batch")
+    public void onWebrtcSignalBatch(SocketIOClient client, AckRequest ack, WebRtcSignalBatch batch) {
+        String fromUserId = routingTable.nodeIdOf(client);
+
+        List<WebRtcSignal> signals = batch != null ? batch.getSignals() : null;
+        if (signals == null || signals.isEmpty()) {
+            return;
         }
+        // 发送过批量信令的客户端也能接收批量包
+        SignalCoalescer.markBatchCapable(client);
+        logger.debug("转发WebRTC批量信令: {} 发出 {} 条", fromUserId, signals.size());
+
+        dispatch(client, fromUserId, EventLane.SIGNAL, "webrtc-signal-batch", () -> {
+            // 按目标分组，每个目标只发一个包，组内保持原有顺序
+            Map<String, List<WebRtcSignal>> byTarget = new LinkedHashMap<>();
+            for (WebRtcSignal signal : signals) {
+                String targetUserId = signal.getTargetUserId();
+                if (targetUserId == null) {
+                    continue;
+                }
+                signal.setTargetUserId(null);
+                signal.setFromUserId(fromUserId);
+                byTarget.computeIfAbsent(targetUserId, key -> new ArrayList<>()).add(signal);
+            }
+            byTarget.forEach(signalCoalescer::send);
+        });
     }
 
     @OnEvent("heartbeat")
     public void onHeartbeat(SocketIOClient client, AckRequest ack) {
-        String nodeId = client.getSessionId().toString();
+        String nodeId = routingTable.nodeIdOf(client);
 
-        nodeManagerService.updateHeartbeat(nodeId);
-        client.sendEvent("heartbeat-ack");
+        dispatch(client, nodeId, EventLane.SIGNAL, "heartbeat", () -> {
+            client.sendEvent("heartbeat-ack");
+            nodeManagerService.updateHeartbeat(nodeId);
+        });
     }
 
-    private SocketIOClient findClient(String sessionId) {
-        for (SocketIOClient client : server.getAllClients()) {
-            if (client.getSessionId().toString().equals(sessionId)) {
-                return client;
-            }
+    private void sendRegisterAck(SocketIOClient client, String nodeId, String event, RegisterSessionAck result) {
+        if (Boolean.TRUE.equals(result.getResync())) {
+            logger.warn("用户 {} 分块注册会话 {} 已失效或序号不连续, 当前已应用至 #{}", nodeId, result.getSessionId(), result.getSeq());
+            client.sendEvent("register-resync", result);
+        } else {
+            client.sendEvent(event, result);
+        }
+    }
+
+    private void sendSession(SocketIOClient client, String nodeId, String resumeToken, boolean resumed) {
+        Map<String, Object> session = new HashMap<>();
+        session.put("nodeId", nodeId);
+        session.put("resumeToken", resumeToken);
+        session.put("resumed", resumed);
+        session.put("graceMs", resumeRegistry.getGraceMs());
+        session.put("encoding", isBinary(client) ? "binary" : "json");
+        client.sendEvent("session", session);
+    }
+
+    private static boolean isBinary(SocketIOClient client) {
+        return Boolean.TRUE.equals(client.get(BINARY_WIRE_KEY));
+    }
+
+    /**
+     * 交给节点在对应通道的串行队列执行，队列已满时回复 server-busy，由客户端稍后重试
+     */
+    private void dispatch(SocketIOClient client, String nodeId, EventLane lane, String event, Runnable task) {
+        if (!dispatcher.submit(lane, nodeId, task)) {
+            logger.warn("事件队列已满, 拒绝用户 {} 的 {} 请求", nodeId, event);
+            Map<String, Object> busy = new HashMap<>();
+            busy.put("event", event);
+            busy.put("pending", dispatcher.pendingCount(lane));
+            client.sendEvent("server-busy", busy);
         }
-        return null;
     }
 }
@@ -0,0 +1,293 @@
+package com.sumu.japdemo.store;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.entity.NodeFile;
+import com.sumu.japdemo.entity.NodeInfo;
+import com.sumu.japdemo.mapper.CompactFileInfoMapper;
+import com.sumu.japdemo.mapper.CompactNodeFileMapper;
+import com.sumu.japdemo.mapper.NodeInfoMapper;
+import com.sumu.japdemo.mapper.typehandler.Sha256HashTypeHandler;
+import com.sumu.japdemo.utils.BatchUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * 紧凑表结构 (db/schema-compact.sql) 上的 MySQL 实现：哈希存为 BINARY(32)，关联表以 t_node_info.id 代替节点 ID 字符串。
+ * 不是 64 位小写十六进制的哈希无法写入，只保留在内存索引中，计数后定期打印
+ */
+@Component
+@ConditionalOnProperty(name = "p2p.store.type", havingValue = "mysql-compact")
+public class CompactMysqlIndexStore implements IndexStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompactMysqlIndexStore.class);
+
+    /**
+     * 节点 ID -> t_node_info.id，t_node_info 的行只会被标记离线不会删除，映射不会失效
+     */
+    private final ConcurrentHashMap<String, Long> nodeKeys = new ConcurrentHashMap<>();
+
+    private final AtomicLong skippedHashes = new AtomicLong();
+
+    @Value("${p2p.reconcile.chunk-size:10000}")
+    private int chunkSize;
+
+    @Autowired
+    private NodeInfoMapper nodeInfoMapper;
+
+    @Autowired
+    private CompactNodeFileMapper nodeFileMapper;
+
+    @Autowired
+    private CompactFileInfoMapper fileInfoMapper;
+
+    @Override
+    public void saveNode(String nodeId, String ipAddress) {
+        NodeInfo nodeInfo = getNode(nodeId);
+        if (nodeInfo == null) {
+            nodeInfo = new NodeInfo();
+            nodeInfo.setCreateTime(LocalDateTime.now());
+        }
+        nodeInfo.setNodeId(nodeId);
+        nodeInfo.setIpAddress(ipAddress);
+        nodeInfo.setActive(true);
+        nodeInfo.setLastHeartbeat(LocalDateTime.now());
+        nodeInfo.setUpdateTime(LocalDateTime.now());
+
+        if (nodeInfo.getId() == null) {
+            nodeInfoMapper.insert(nodeInfo);
+        } else {
+            nodeInfoMapper.updateById(nodeInfo);
+        }
+        nodeKeys.put(nodeId, nodeInfo.getId());
+    }
+
+    @Override
+    public NodeInfo getNode(String nodeId) {
+        return nodeInfoMapper.selectOne(
+                new LambdaQueryWrapper<NodeInfo>()
+                        .eq(NodeInfo::getNodeId, nodeId)
+        );
+    }
+
+    @Override
+    @Transactional
+    public void updateHeartbeats(Collection<NodeInfo> heartbeats) {
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(NodeInfo.class, sqlSession -> {
+            NodeInfoMapper mapper = sqlSession.getMapper(NodeInfoMapper.class);
+            for (List<NodeInfo> chunk : BatchUtil.partition(heartbeats)) {
+                mapper.updateHeartbeatBatch(chunk);
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public void removeNodes(Collection<String> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(NodeInfo.class, sqlSession -> {
+            CompactNodeFileMapper nodeFileBatchMapper = sqlSession.getMapper(CompactNodeFileMapper.class);
+            NodeInfoMapper nodeInfoBatchMapper = sqlSession.getMapper(NodeInfoMapper.class);
+            for (List<String> chunk : BatchUtil.partition(nodeIds)) {
+                nodeFileBatchMapper.deleteByNodeIds(chunk);
+                nodeInfoBatchMapper.deactivateNodes(chunk);
+            }
+        });
+        nodeIds.forEach(nodeKeys::remove);
+    }
+
+    @Override
+    public List<String> getFileHashes(String nodeId) {
+        Long nodeKey = nodeKey(nodeId);
+        return nodeKey == null ? new ArrayList<>() : nodeFileMapper.selectFileHashesByNodeKey(nodeKey);
+    }
+
+    @Override
+    @Transactional
+    public void replaceNodeFiles(String nodeId, Collection<String> fileHashes) {
+        Long nodeKey = nodeKey(nodeId);
+        if (nodeKey == null) {
+            return;
+        }
+        Set<String> newHashes = new LinkedHashSet<>(fileHashes);
+        Set<String> currentHashes = new HashSet<>(nodeFileMapper.selectFileHashesByNodeKey(nodeKey));
+        List<String> addedHashes = newHashes.stream()
+                .filter(hash -> !currentHashes.contains(hash))
+                .collect(Collectors.toList());
+        List<String> removedHashes = currentHashes.stream()
+                .filter(hash -> !newHashes.contains(hash))
+                .collect(Collectors.toList());
+        writeNodeFiles(nodeKey, addedHashes, removedHashes);
+    }
+
+    @Override
+    @Transactional
+    public void updateNodeFiles(String nodeId, Collection<String> addedHashes, Collection<String> removedHashes) {
+        if (addedHashes.isEmpty() && removedHashes.isEmpty()) {
+            return;
+        }
+        Long nodeKey = nodeKey(nodeId);
+        if (nodeKey != null) {
+            writeNodeFiles(nodeKey, addedHashes, removedHashes);
+        }
+    }
+
+    @Override
+    public FileInfo getFile(String fileHash) {
+        return Sha256HashTypeHandler.isStorable(fileHash) ? fileInfoMapper.selectByFileHash(fileHash) : null;
+    }
+
+    @Override
+    @Transactional
+    public void saveFileCounts(Collection<FileInfo> seeded, Collection<String> unseeded) {
+        List<FileInfo> storableSeeded = seeded.stream()
+                .filter(file -> storable(file.getFileHash()))
+                .collect(Collectors.toList());
+        List<String> storableUnseeded = storable(unseeded);
+        if (storableSeeded.isEmpty() && storableUnseeded.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(FileInfo.class, sqlSession -> {
+            CompactFileInfoMapper mapper = sqlSession.getMapper(CompactFileInfoMapper.class);
+            for (List<FileInfo> chunk : BatchUtil.partition(storableSeeded)) {
+                mapper.upsertNodeCounts(chunk);
+            }
+            for (List<String> chunk : BatchUtil.partition(storableUnseeded)) {
+                mapper.deleteByFileHashes(chunk);
+            }
+        });
+    }
+
+    @Override
+    public void forEachActiveFile(BiConsumer<String, FileInfo> consumer) {
+        List<NodeFile> nodeFiles = nodeFileMapper.selectActiveNodeFiles();
+        Map<String, FileInfo> fileInfos = new HashMap<>();
+        List<String> fileHashes = nodeFiles.stream()
+                .map(NodeFile::getFileHash)
+                .distinct()
+                .collect(Collectors.toList());
+        for (List<String> chunk : BatchUtil.partition(fileHashes)) {
+            for (FileInfo fileInfo : fileInfoMapper.selectByFileHashes(chunk)) {
+                fileInfos.put(fileInfo.getFileHash(), fileInfo);
+            }
+        }
+        for (NodeFile nodeFile : nodeFiles) {
+            FileInfo fileInfo = fileInfos.get(nodeFile.getFileHash());
+            if (fileInfo != null) {
+                consumer.accept(nodeFile.getNodeId(), fileInfo);
+            }
+        }
+    }
+
+    @Override
+    public int deactivateAllNodes() {
+        int deactivated = 0;
+        long maxId = nodeInfoMapper.selectMaxId();
+        for (long from = 0; from < maxId; from += chunkSize) {
+            deactivated += nodeInfoMapper.deactivateInRange(from, Math.min(from + chunkSize, maxId));
+        }
+        return deactivated;
+    }
+
+    /**
+     * 关联表按主键前缀 node_key 分块，文件表按 id 分块
+     */
+    @Override
+    public ReconcileResult reconcile() {
+        long deletedPairs = 0;
+        long maxNodeKey = nodeFileMapper.selectMaxNodeKey();
+        for (long from = 0; from < maxNodeKey; from += chunkSize) {
+            deletedPairs += nodeFileMapper.deleteInactiveInRange(from, Math.min(from + chunkSize, maxNodeKey));
+        }
+
+        long recounted = 0;
+        long deletedFiles = 0;
+        long fileMaxId = fileInfoMapper.selectMaxId();
+        for (long from = 0; from < fileMaxId; from += chunkSize) {
+            long to = Math.min(from + chunkSize, fileMaxId);
+            recounted += fileInfoMapper.recountInRange(from, to);
+            deletedFiles += fileInfoMapper.deleteUnseededInRange(from, to);
+        }
+        long skipped = skippedHashes.get();
+        if (skipped > 0) {
+            logger.warn("紧凑表无法保存非 SHA-256 格式的哈希，已跳过 {} 个，这些文件只存在于内存索引中", skipped);
+        }
+        return new ReconcileResult(deletedPairs, recounted, deletedFiles);
+    }
+
+    private void writeNodeFiles(long nodeKey, Collection<String> addedHashes, Collection<String> removedHashes) {
+        List<String> added = storable(addedHashes);
+        List<String> removed = storable(removedHashes);
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(NodeFile.class, sqlSession -> {
+            CompactNodeFileMapper nodeFileBatchMapper = sqlSession.getMapper(CompactNodeFileMapper.class);
+            for (List<String> chunk : BatchUtil.partition(added)) {
+                nodeFileBatchMapper.insertIgnoreBatch(nodeKey, chunk);
+            }
+            for (List<String> chunk : BatchUtil.partition(removed)) {
+                nodeFileBatchMapper.deleteByNodeKeyAndHashes(nodeKey, chunk);
+            }
+        });
+    }
+
+    /**
+     * 没有 t_node_info 记录的节点无法写入关联，返回 null
+     */
+    private Long nodeKey(String nodeId) {
+        Long nodeKey = nodeKeys.get(nodeId);
+        if (nodeKey != null) {
+            return nodeKey;
+        }
+        NodeInfo nodeInfo = getNode(nodeId);
+        if (nodeInfo == null) {
+            logger.debug("节点 {} 不在 t_node_info 中，跳过关联写入", nodeId);
+            return null;
+        }
+        nodeKeys.put(nodeId, nodeInfo.getId());
+        return nodeInfo.getId();
+    }
+
+    private List<String> storable(Collection<String> fileHashes) {
+        List<String> storable = new ArrayList<>(fileHashes.size());
+        for (String fileHash : fileHashes) {
+            if (storable(fileHash)) {
+                storable.add(fileHash);
+            }
+        }
+        return storable;
+    }
+
+    private boolean storable(String fileHash) {
+        if (Sha256HashTypeHandler.isStorable(fileHash)) {
+            return true;
+        }
+        skippedHashes.incrementAndGet();
+        return false;
+    }
+}
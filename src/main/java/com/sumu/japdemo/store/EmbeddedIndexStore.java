@@ -0,0 +1,244 @@
+package com.sumu.japdemo.store;
+
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.entity.NodeInfo;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * 进程内实现，不需要数据库，适合边缘部署和测试。数据只在内存中，重启后为空；
+ * 需要重启后保留注册时配合 p2p.index.persistence 使用，索引和会话由快照 + WAL 恢复。
+ * 同一节点的关联修改在 compute 中完成，与注销互相串行
+ */
+@Component
+@ConditionalOnProperty(name = "p2p.store.type", havingValue = "embedded")
+public class EmbeddedIndexStore implements IndexStore {
+
+    private final ConcurrentHashMap<String, NodeInfo> nodes = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Set<String>> nodeFiles = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, FileInfo> files = new ConcurrentHashMap<>();
+
+    private final AtomicLong nodeIds = new AtomicLong();
+
+    private final AtomicLong fileIds = new AtomicLong();
+
+    @Override
+    public void saveNode(String nodeId, String ipAddress) {
+        LocalDateTime now = LocalDateTime.now();
+        nodes.compute(nodeId, (key, nodeInfo) -> {
+            if (nodeInfo == null) {
+                nodeInfo = new NodeInfo();
+                nodeInfo.setId(nodeIds.incrementAndGet());
+                nodeInfo.setNodeId(nodeId);
+                nodeInfo.setCreateTime(now);
+            }
+            nodeInfo.setIpAddress(ipAddress);
+            nodeInfo.setActive(true);
+            nodeInfo.setLastHeartbeat(now);
+            nodeInfo.setUpdateTime(now);
+            return nodeInfo;
+        });
+    }
+
+    @Override
+    public NodeInfo getNode(String nodeId) {
+        NodeInfo[] copy = new NodeInfo[1];
+        nodes.computeIfPresent(nodeId, (key, nodeInfo) -> {
+            copy[0] = copyOf(nodeInfo);
+            return nodeInfo;
+        });
+        return copy[0];
+    }
+
+    @Override
+    public void updateHeartbeats(Collection<NodeInfo> heartbeats) {
+        for (NodeInfo heartbeat : heartbeats) {
+            nodes.computeIfPresent(heartbeat.getNodeId(), (key, nodeInfo) -> {
+                nodeInfo.setLastHeartbeat(heartbeat.getLastHeartbeat());
+                return nodeInfo;
+            });
+        }
+    }
+
+    @Override
+    public void removeNodes(Collection<String> nodeIds) {
+        LocalDateTime now = LocalDateTime.now();
+        for (String nodeId : nodeIds) {
+            nodeFiles.remove(nodeId);
+            nodes.computeIfPresent(nodeId, (key, nodeInfo) -> {
+                nodeInfo.setActive(false);
+                nodeInfo.setUpdateTime(now);
+                return nodeInfo;
+            });
+        }
+    }
+
+    @Override
+    public List<String> getFileHashes(String nodeId) {
+        Set<String> hashes = nodeFiles.get(nodeId);
+        return hashes == null ? new ArrayList<>() : new ArrayList<>(hashes);
+    }
+
+    @Override
+    public void replaceNodeFiles(String nodeId, Collection<String> fileHashes) {
+        if (fileHashes.isEmpty()) {
+            nodeFiles.remove(nodeId);
+            return;
+        }
+        Set<String> hashes = ConcurrentHashMap.newKeySet(fileHashes.size());
+        hashes.addAll(fileHashes);
+        nodeFiles.put(nodeId, hashes);
+    }
+
+    @Override
+    public void updateNodeFiles(String nodeId, Collection<String> addedHashes, Collection<String> removedHashes) {
+        if (addedHashes.isEmpty() && removedHashes.isEmpty()) {
+            return;
+        }
+        nodeFiles.compute(nodeId, (key, hashes) -> {
+            if (hashes == null) {
+                hashes = ConcurrentHashMap.newKeySet(addedHashes.size());
+            }
+            hashes.addAll(addedHashes);
+            hashes.removeAll(removedHashes);
+            return hashes.isEmpty() ? null : hashes;
+        });
+    }
+
+    @Override
+    public FileInfo getFile(String fileHash) {
+        FileInfo fileInfo = files.get(fileHash);
+        return fileInfo == null ? null : copyOf(fileInfo);
+    }
+
+    @Override
+    public void saveFileCounts(Collection<FileInfo> seeded, Collection<String> unseeded) {
+        LocalDateTime now = LocalDateTime.now();
+        for (FileInfo file : seeded) {
+            files.compute(file.getFileHash(), (key, fileInfo) -> {
+                if (fileInfo == null) {
+                    fileInfo = copyOf(file);
+                    fileInfo.setId(fileIds.incrementAndGet());
+                    fileInfo.setCreateTime(now);
+                } else {
+                    // 与 MySQL 的 upsert 一致，已存在的文件只更新计数
+                    fileInfo = copyOf(fileInfo);
+                    fileInfo.setNodeCount(file.getNodeCount());
+                }
+                fileInfo.setUpdateTime(now);
+                return fileInfo;
+            });
+        }
+        for (String fileHash : unseeded) {
+            files.remove(fileHash);
+        }
+    }
+
+    @Override
+    public void forEachActiveFile(BiConsumer<String, FileInfo> consumer) {
+        for (Map.Entry<String, Set<String>> entry : nodeFiles.entrySet()) {
+            NodeInfo nodeInfo = nodes.get(entry.getKey());
+            if (nodeInfo == null || !Boolean.TRUE.equals(nodeInfo.getActive())) {
+                continue;
+            }
+            for (String fileHash : entry.getValue()) {
+                FileInfo fileInfo = files.get(fileHash);
+                if (fileInfo != null) {
+                    consumer.accept(entry.getKey(), copyOf(fileInfo));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int deactivateAllNodes() {
+        int[] deactivated = new int[1];
+        LocalDateTime now = LocalDateTime.now();
+        for (String nodeId : nodes.keySet()) {
+            nodes.computeIfPresent(nodeId, (key, nodeInfo) -> {
+                if (Boolean.TRUE.equals(nodeInfo.getActive())) {
+                    nodeInfo.setActive(false);
+                    nodeInfo.setUpdateTime(now);
+                    deactivated[0]++;
+                }
+                return nodeInfo;
+            });
+        }
+        return deactivated[0];
+    }
+
+    @Override
+    public ReconcileResult reconcile() {
+        long deletedPairs = 0;
+        Map<String, Integer> counts = new HashMap<>();
+        Iterator<Map.Entry<String, Set<String>>> it = nodeFiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Set<String>> entry = it.next();
+            NodeInfo nodeInfo = nodes.get(entry.getKey());
+            if (nodeInfo == null || !Boolean.TRUE.equals(nodeInfo.getActive())) {
+                deletedPairs += entry.getValue().size();
+                it.remove();
+                continue;
+            }
+            for (String fileHash : entry.getValue()) {
+                counts.merge(fileHash, 1, Integer::sum);
+            }
+        }
+
+        long recounted = 0;
+        long deletedFiles = 0;
+        for (String fileHash : files.keySet()) {
+            int count = counts.getOrDefault(fileHash, 0);
+            recounted++;
+            if (count == 0) {
+                files.remove(fileHash);
+                deletedFiles++;
+            } else {
+                files.computeIfPresent(fileHash, (key, fileInfo) -> {
+                    fileInfo = copyOf(fileInfo);
+                    fileInfo.setNodeCount(count);
+                    return fileInfo;
+                });
+            }
+        }
+        return new ReconcileResult(deletedPairs, recounted, deletedFiles);
+    }
+
+    private static NodeInfo copyOf(NodeInfo source) {
+        NodeInfo copy = new NodeInfo();
+        copy.setId(source.getId());
+        copy.setNodeId(source.getNodeId());
+        copy.setActive(source.getActive());
+        copy.setLastHeartbeat(source.getLastHeartbeat());
+        copy.setIpAddress(source.getIpAddress());
+        copy.setCreateTime(source.getCreateTime());
+        copy.setUpdateTime(source.getUpdateTime());
+        return copy;
+    }
+
+    private static FileInfo copyOf(FileInfo source) {
+        FileInfo copy = new FileInfo();
+        copy.setId(source.getId());
+        copy.setFileHash(source.getFileHash());
+        copy.setFileName(source.getFileName());
+        copy.setFileSize(source.getFileSize());
+        copy.setNodeCount(source.getNodeCount());
+        copy.setCreateTime(source.getCreateTime());
+        copy.setUpdateTime(source.getUpdateTime());
+        return copy;
+    }
+}
@@ -0,0 +1,93 @@
+package com.sumu.japdemo.store;
+
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.entity.NodeInfo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 节点、文件和节点-文件关联的持久化。内存索引是权威数据，这里只负责落库和启动时的加载/对账。
+ * 由 p2p.store.type 选择实现：mysql (默认) 或 embedded (进程内存储，不需要数据库)。
+ * 每个写方法自身是原子的，返回后即已提交
+ */
+public interface IndexStore {
+
+    /**
+     * 节点上线：不存在时创建，存在时更新 IP 并重新标记为活跃
+     */
+    void saveNode(String nodeId, String ipAddress);
+
+    NodeInfo getNode(String nodeId);
+
+    /**
+     * 批量写回心跳时间 (nodeId + lastHeartbeat)，不存在的节点忽略
+     */
+    void updateHeartbeats(Collection<NodeInfo> heartbeats);
+
+    /**
+     * 注销节点：删除其全部关联并标记为离线
+     */
+    void removeNodes(Collection<String> nodeIds);
+
+    List<String> getFileHashes(String nodeId);
+
+    /**
+     * 把节点的关联整体替换为 fileHashes，只写入/删除有变化的记录
+     */
+    void replaceNodeFiles(String nodeId, Collection<String> fileHashes);
+
+    /**
+     * 增量修改节点的关联，已存在的新增和不存在的删除都忽略
+     */
+    void updateNodeFiles(String nodeId, Collection<String> addedHashes, Collection<String> removedHashes);
+
+    FileInfo getFile(String fileHash);
+
+    /**
+     * 写回内存索引中的做种节点数：seeded 不存在时插入，存在时只更新 node_count (保留首次注册的文件名和大小)；
+     * unseeded 中的文件删除
+     */
+    void saveFileCounts(Collection<FileInfo> seeded, Collection<String> unseeded);
+
+    /**
+     * 遍历活跃节点的全部关联及其文件信息，用于启动时重建内存索引；没有文件信息的关联跳过
+     */
+    void forEachActiveFile(BiConsumer<String, FileInfo> consumer);
+
+    /**
+     * 启动对账第一步：把上次运行遗留的活跃节点全部标记为离线，返回节点数
+     */
+    int deactivateAllNodes();
+
+    /**
+     * 启动对账第二步：删除离线或不存在节点的关联，按关联重算 node_count 并删除无节点的文件
+     */
+    ReconcileResult reconcile();
+
+    final class ReconcileResult {
+
+        private final long deletedPairs;
+        private final long recounted;
+        private final long deletedFiles;
+
+        public ReconcileResult(long deletedPairs, long recounted, long deletedFiles) {
+            this.deletedPairs = deletedPairs;
+            this.recounted = recounted;
+            this.deletedFiles = deletedFiles;
+        }
+
+        public long getDeletedPairs() {
+            return deletedPairs;
+        }
+
+        public long getRecounted() {
+            return recounted;
+        }
+
+        public long getDeletedFiles() {
+            return deletedFiles;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.sumu.japdemo.store;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.entity.NodeFile;
+import com.sumu.japdemo.entity.NodeInfo;
+import com.sumu.japdemo.mapper.FileInfoMapper;
+import com.sumu.japdemo.mapper.NodeFileMapper;
+import com.sumu.japdemo.mapper.NodeInfoMapper;
+import com.sumu.japdemo.utils.BatchUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+
+/**
+ * MySQL + MyBatis-Plus 实现，批量写入在 BATCH 执行器中按块执行
+ */
+@Component
+@ConditionalOnProperty(name = "p2p.store.type", havingValue = "mysql", matchIfMissing = true)
+public class MysqlIndexStore implements IndexStore {
+
+    @Value("${p2p.reconcile.chunk-size:10000}")
+    private int chunkSize;
+
+    @Autowired
+    private NodeInfoMapper nodeInfoMapper;
+
+    @Autowired
+    private NodeFileMapper nodeFileMapper;
+
+    @Autowired
+    private FileInfoMapper fileInfoMapper;
+
+    @Override
+    public void saveNode(String nodeId, String ipAddress) {
+        NodeInfo nodeInfo = getNode(nodeId);
+        if (nodeInfo == null) {
+            nodeInfo = new NodeInfo();
+            nodeInfo.setCreateTime(LocalDateTime.now());
+        }
+        nodeInfo.setNodeId(nodeId);
+        nodeInfo.setIpAddress(ipAddress);
+        nodeInfo.setActive(true);
+        nodeInfo.setLastHeartbeat(LocalDateTime.now());
+        nodeInfo.setUpdateTime(LocalDateTime.now());
+
+        if (nodeInfo.getId() == null) {
+            nodeInfoMapper.insert(nodeInfo);
+        } else {
+            nodeInfoMapper.updateById(nodeInfo);
+        }
+    }
+
+    @Override
+    public NodeInfo getNode(String nodeId) {
+        return nodeInfoMapper.selectOne(
+                new LambdaQueryWrapper<NodeInfo>()
+                        .eq(NodeInfo::getNodeId, nodeId)
+        );
+    }
+
+    @Override
+    @Transactional
+    public void updateHeartbeats(Collection<NodeInfo> heartbeats) {
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(NodeInfo.class, sqlSession -> {
+            NodeInfoMapper mapper = sqlSession.getMapper(NodeInfoMapper.class);
+            for (List<NodeInfo> chunk : BatchUtil.partition(heartbeats)) {
+                mapper.updateHeartbeatBatch(chunk);
+            }
+        });
+    }
+
+    @Override
+    @Transactional
+    public void removeNodes(Collection<String> nodeIds) {
+        if (nodeIds.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(NodeInfo.class, sqlSession -> {
+            NodeFileMapper nodeFileBatchMapper = sqlSession.getMapper(NodeFileMapper.class);
+            NodeInfoMapper nodeInfoBatchMapper = sqlSession.getMapper(NodeInfoMapper.class);
+            for (List<String> chunk : BatchUtil.partition(nodeIds)) {
+                nodeFileBatchMapper.deleteByNodeIds(chunk);
+                nodeInfoBatchMapper.deactivateNodes(chunk);
+            }
+        });
+    }
+
+    @Override
+    public List<String> getFileHashes(String nodeId) {
+        return nodeFileMapper.selectFileHashesByNodeId(nodeId);
+    }
+
+    @Override
+    @Transactional
+    public void replaceNodeFiles(String nodeId, Collection<String> fileHashes) {
+        Set<String> newHashes = new LinkedHashSet<>(fileHashes);
+        Set<String> currentHashes = new HashSet<>(nodeFileMapper.selectFileHashesByNodeId(nodeId));
+        List<String> addedHashes = newHashes.stream()
+                .filter(hash -> !currentHashes.contains(hash))
+                .collect(Collectors.toList());
+        List<String> removedHashes = currentHashes.stream()
+                .filter(hash -> !newHashes.contains(hash))
+                .collect(Collectors.toList());
+        writeNodeFiles(nodeId, addedHashes, removedHashes);
+    }
+
+    @Override
+    @Transactional
+    public void updateNodeFiles(String nodeId, Collection<String> addedHashes, Collection<String> removedHashes) {
+        writeNodeFiles(nodeId, addedHashes, removedHashes);
+    }
+
+    @Override
+    public FileInfo getFile(String fileHash) {
+        return fileInfoMapper.selectOne(
+                new LambdaQueryWrapper<FileInfo>()
+                        .eq(FileInfo::getFileHash, fileHash)
+        );
+    }
+
+    @Override
+    @Transactional
+    public void saveFileCounts(Collection<FileInfo> seeded, Collection<String> unseeded) {
+        if (seeded.isEmpty() && unseeded.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(FileInfo.class, sqlSession -> {
+            FileInfoMapper mapper = sqlSession.getMapper(FileInfoMapper.class);
+            for (List<FileInfo> chunk : BatchUtil.partition(seeded)) {
+                mapper.upsertNodeCounts(chunk);
+            }
+            for (List<String> chunk : BatchUtil.partition(unseeded)) {
+                mapper.deleteByFileHashes(chunk);
+            }
+        });
+    }
+
+    @Override
+    public void forEachActiveFile(BiConsumer<String, FileInfo> consumer) {
+        List<NodeFile> nodeFiles = nodeFileMapper.selectActiveNodeFiles();
+        Map<String, FileInfo> fileInfos = new HashMap<>();
+        List<String> fileHashes = nodeFiles.stream()
+                .map(NodeFile::getFileHash)
+                .distinct()
+                .collect(Collectors.toList());
+        for (List<String> chunk : BatchUtil.partition(fileHashes)) {
+            for (FileInfo fileInfo : fileInfoMapper.selectList(
+                    new LambdaQueryWrapper<FileInfo>().in(FileInfo::getFileHash, chunk))) {
+                fileInfos.put(fileInfo.getFileHash(), fileInfo);
+            }
+        }
+        for (NodeFile nodeFile : nodeFiles) {
+            FileInfo fileInfo = fileInfos.get(nodeFile.getFileHash());
+            if (fileInfo != null) {
+                consumer.accept(nodeFile.getNodeId(), fileInfo);
+            }
+        }
+    }
+
+    /**
+     * 按主键区间分块执行，每条语句只锁一个区间
+     */
+    @Override
+    public int deactivateAllNodes() {
+        int deactivated = 0;
+        long maxId = nodeInfoMapper.selectMaxId();
+        for (long from = 0; from < maxId; from += chunkSize) {
+            deactivated += nodeInfoMapper.deactivateInRange(from, Math.min(from + chunkSize, maxId));
+        }
+        return deactivated;
+    }
+
+    @Override
+    public ReconcileResult reconcile() {
+        long deletedPairs = 0;
+        long nodeFileMaxId = nodeFileMapper.selectMaxId();
+        for (long from = 0; from < nodeFileMaxId; from += chunkSize) {
+            deletedPairs += nodeFileMapper.deleteInactiveInRange(from, Math.min(from + chunkSize, nodeFileMaxId));
+        }
+
+        long recounted = 0;
+        long deletedFiles = 0;
+        long fileMaxId = fileInfoMapper.selectMaxId();
+        for (long from = 0; from < fileMaxId; from += chunkSize) {
+            long to = Math.min(from + chunkSize, fileMaxId);
+            recounted += fileInfoMapper.recountInRange(from, to);
+            deletedFiles += fileInfoMapper.deleteUnseededInRange(from, to);
+        }
+        return new ReconcileResult(deletedPairs, recounted, deletedFiles);
+    }
+
+    private void writeNodeFiles(String nodeId, Collection<String> addedHashes, Collection<String> removedHashes) {
+        if (addedHashes.isEmpty() && removedHashes.isEmpty()) {
+            return;
+        }
+        BatchUtil.executeBatch(NodeFile.class, sqlSession -> {
+            NodeFileMapper nodeFileBatchMapper = sqlSession.getMapper(NodeFileMapper.class);
+            for (List<String> chunk : BatchUtil.partition(addedHashes)) {
+                nodeFileBatchMapper.insertIgnoreBatch(nodeId, chunk);
+            }
+            for (List<String> chunk : BatchUtil.partition(removedHashes)) {
+                nodeFileBatchMapper.deleteByNodeIdAndHashes(nodeId, chunk);
+            }
+        });
+    }
+}
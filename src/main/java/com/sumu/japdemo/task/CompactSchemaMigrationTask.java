@@ -0,0 +1,131 @@
+package com.sumu.japdemo.task;
+
+import com.sumu.japdemo.mapper.FileInfoMapper;
+import com.sumu.japdemo.mapper.NodeFileMapper;
+import com.sumu.japdemo.mapper.SchemaMigrationMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在线迁移：旧版本 (p2p.store.type: mysql) 正常服务时，在后台把 t_file_info / t_node_file 按主键区间分块复制到紧凑表，
+ * 每块一个短事务，块间暂停以限制对线上写入的影响。复制后的新增行由追赶轮次补上；复制后被删除的行不同步，
+ * 切换到 mysql-compact 重启时全部节点离线，启动对账会删除它们
+ */
+@Component
+@ConditionalOnProperty(name = "p2p.store.migration.enabled", havingValue = "true")
+@Order(3)
+public class CompactSchemaMigrationTask implements CommandLineRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompactSchemaMigrationTask.class);
+
+    private static final List<String> TABLES = Arrays.asList(
+            "t_file_info", "t_node_file", "t_file_info_compact", "t_node_file_compact");
+
+    @Value("${p2p.store.migration.chunk-size:5000}")
+    private int chunkSize;
+
+    @Value("${p2p.store.migration.pause-ms:50}")
+    private long pauseMs;
+
+    @Value("${p2p.store.migration.catch-up-rounds:3}")
+    private int catchUpRounds;
+
+    @Autowired
+    private SchemaMigrationMapper migrationMapper;
+
+    @Autowired
+    private FileInfoMapper fileInfoMapper;
+
+    @Autowired
+    private NodeFileMapper nodeFileMapper;
+
+    @Override
+    public void run(String... args) {
+        Thread thread = new Thread(this::migrate, "compact-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void migrate() {
+        logger.info("========== 开始迁移到紧凑表结构 ==========");
+        long start = System.currentTimeMillis();
+        try {
+            logTableStats("迁移前");
+            long fileDone = 0;
+            long nodeFileDone = 0;
+            long copiedFiles = 0;
+            long copiedPairs = 0;
+            // 第 0 轮为全量复制，之后每轮只复制上一轮结束后新增的行，直到没有新增
+            for (int round = 0; round <= catchUpRounds; round++) {
+                long fileMaxId = fileInfoMapper.selectMaxId();
+                long nodeFileMaxId = nodeFileMapper.selectMaxId();
+                if (round > 0 && fileMaxId == fileDone && nodeFileMaxId == nodeFileDone) {
+                    break;
+                }
+                // 先复制文件再复制关联，与服务的写入顺序一致
+                copiedFiles += copyInRange(fileDone, fileMaxId, migrationMapper::copyFileInfoInRange);
+                copiedPairs += copyInRange(nodeFileDone, nodeFileMaxId, migrationMapper::copyNodeFileInRange);
+                fileDone = fileMaxId;
+                nodeFileDone = nodeFileMaxId;
+                logger.info("迁移第 {} 轮完成: t_file_info 至 id {}, t_node_file 至 id {}", round, fileDone, nodeFileDone);
+            }
+            logger.info("========== 紧凑表迁移完成: 复制 {} 个文件, {} 条节点-文件关联, 耗时 {} ms ==========",
+                    copiedFiles, copiedPairs, System.currentTimeMillis() - start);
+
+            long unstorableFiles = migrationMapper.countUnstorableFileInfo();
+            long unstorablePairs = migrationMapper.countUnstorableNodeFile();
+            if (unstorableFiles > 0 || unstorablePairs > 0) {
+                logger.warn("{} 个文件、{} 条关联的哈希不是 SHA-256 格式，紧凑表无法保存，未复制",
+                        unstorableFiles, unstorablePairs);
+            }
+            logTableStats("迁移后");
+        } catch (Exception e) {
+            logger.error("紧凑表迁移失败，已复制的数据可以保留，重新开启迁移会从头复制", e);
+        }
+    }
+
+    private long copyInRange(long fromId, long toId, RangeCopy copy) throws InterruptedException {
+        long copied = 0;
+        for (long from = fromId; from < toId; from += chunkSize) {
+            copied += copy.copy(from, Math.min(from + chunkSize, toId));
+            if (pauseMs > 0) {
+                Thread.sleep(pauseMs);
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * InnoDB 的 TABLE_ROWS / AVG_ROW_LENGTH 是估算值，先 ANALYZE 刷新统计信息
+     */
+    private void logTableStats(String phase) {
+        for (String table : TABLES) {
+            migrationMapper.analyzeTable(table);
+        }
+        for (Map<String, Object> stats : migrationMapper.selectTableStats(TABLES)) {
+            long dataLength = toLong(stats.get("dataLength"));
+            long indexLength = toLong(stats.get("indexLength"));
+            logger.info("{} {}: 约 {} 行, 平均行长 {} B, 数据 {} KB, 索引 {} KB, 合计 {} KB", phase,
+                    stats.get("tableName"), stats.get("tableRows"), stats.get("avgRowLength"),
+                    dataLength / 1024, indexLength / 1024, (dataLength + indexLength) / 1024);
+        }
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private interface RangeCopy {
+        int copy(long fromId, long toId);
+    }
+}
@@ -0,0 +1,78 @@
+package com.sumu.japdemo.task;
+
+import com.sumu.japdemo.entity.NodeInfo;
+import com.sumu.japdemo.store.IndexStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 心跳写回：心跳只记录到内存时间戳表，定时把每个节点最新的心跳时间批量写入 IndexStore
+ */
+@Component
+public class HeartbeatFlushTask {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeartbeatFlushTask.class);
+
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    private IndexStore indexStore;
+
+    public void record(String nodeId) {
+        pending.put(nodeId, System.currentTimeMillis());
+    }
+
+    public void discard(String nodeId) {
+        pending.remove(nodeId);
+    }
+
+    @Scheduled(fixedDelayString = "${p2p.heartbeat.flush-interval-ms:5000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<NodeInfo> heartbeats = new ArrayList<>(pending.size());
+        Map<String, Long> taken = new HashMap<>();
+        for (Map.Entry<String, Long> entry : pending.entrySet()) {
+            // 只移除本次读到的时间戳，期间到达的新心跳留给下一轮
+            if (pending.remove(entry.getKey(), entry.getValue())) {
+                NodeInfo nodeInfo = new NodeInfo();
+                nodeInfo.setNodeId(entry.getKey());
+                nodeInfo.setLastHeartbeat(LocalDateTime.ofInstant(
+                        Instant.ofEpochMilli(entry.getValue()), ZoneId.systemDefault()));
+                heartbeats.add(nodeInfo);
+                taken.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (heartbeats.isEmpty()) {
+            return;
+        }
+        try {
+            indexStore.updateHeartbeats(heartbeats);
+        } catch (RuntimeException e) {
+            // 写入失败时放回，与期间到达的新心跳取较新者，下一轮重试
+            taken.forEach((nodeId, timestamp) -> pending.merge(nodeId, timestamp, Math::max));
+            logger.error("心跳写回失败，{} 个节点的心跳留待下一轮重试", heartbeats.size(), e);
+            return;
+        }
+        logger.debug("心跳写回: 更新 {} 个节点", heartbeats.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
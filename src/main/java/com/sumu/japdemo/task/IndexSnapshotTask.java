@@ -0,0 +1,119 @@
+package com.sumu.japdemo.task;
+
+import com.sumu.japdemo.index.FileIndex;
+import com.sumu.japdemo.index.IndexPersistence;
+import com.sumu.japdemo.service.NodeManagerService;
+import com.sumu.japdemo.socketio.SessionResumeRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * 索引快照 + WAL 持久化 (p2p.index.persistence.enabled)：启动时代替从数据库加载索引，
+ * 定期写快照、定期把 WAL 落盘，停机时再写一次快照
+ */
+@Component
+public class IndexSnapshotTask implements SessionResumeRegistry.SessionListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexSnapshotTask.class);
+
+    @Value("${p2p.index.persistence.enabled:false}")
+    private boolean enabled;
+
+    @Value("${p2p.index.persistence.dir:data/index}")
+    private String dir;
+
+    @Autowired
+    private FileIndex fileIndex;
+
+    @Autowired
+    private SessionResumeRegistry resumeRegistry;
+
+    @Autowired
+    private NodeManagerService nodeManagerService;
+
+    private volatile IndexPersistence persistence;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 由启动对账调用：恢复快照和 WAL 中的节点，恢复出的节点都处于离线状态，
+     * 在会话恢复宽限期内带原令牌重连即可继续使用，到期未重连的按正常流程注销
+     */
+    public void restore() throws IOException {
+        IndexPersistence restoring = new IndexPersistence(fileIndex, Paths.get(dir));
+        IndexPersistence.RestoreResult result = restoring.restore();
+        for (Map.Entry<String, String> session : result.getSessions().entrySet()) {
+            resumeRegistry.restore(session.getKey(), session.getValue());
+        }
+        for (String nodeId : result.getNodeIds()) {
+            nodeManagerService.restoreNode(nodeId, resumeRegistry.getGraceMs());
+        }
+        persistence = restoring;
+        resumeRegistry.addListener(this);
+        logger.info("索引从快照恢复完成: {} 个文件, {} 个节点, 重放 {} 条 WAL 记录, 耗时 {} ms",
+                fileIndex.size(), result.getNodeIds().size(), result.getReplayed(), result.getElapsedMs());
+    }
+
+    @Scheduled(fixedDelayString = "${p2p.index.persistence.snapshot-interval-ms:300000}",
+            initialDelayString = "${p2p.index.persistence.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        IndexPersistence current = persistence;
+        if (current == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            long bytes = current.snapshot(resumeRegistry.tokens());
+            logger.info("索引快照完成: {} 个文件, {} 字节, 耗时 {} ms",
+                    fileIndex.size(), bytes, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            logger.error("索引快照失败", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${p2p.index.persistence.wal-sync-ms:200}")
+    public void syncWal() {
+        IndexPersistence current = persistence;
+        if (current != null) {
+            current.sync();
+        }
+    }
+
+    @Override
+    public void onSessionOpened(String nodeId, String token) {
+        IndexPersistence current = persistence;
+        if (current != null) {
+            current.openSession(nodeId, token);
+        }
+    }
+
+    @Override
+    public void onSessionClosed(String nodeId) {
+        IndexPersistence current = persistence;
+        if (current != null) {
+            current.closeSession(nodeId);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        IndexPersistence current = persistence;
+        if (current == null) {
+            return;
+        }
+        snapshot();
+        persistence = null;
+        current.close();
+    }
+}
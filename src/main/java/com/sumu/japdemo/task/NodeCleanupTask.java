@@ -1,134 +1,132 @@
 package com.sumu.japdemo.task;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.corundumstudio.socketio.SocketIOClient;
-import com.corundumstudio.socketio.SocketIOServer;
-import com.sumu.japdemo.entity.NodeFile;
-import com.sumu.japdemo.entity.NodeInfo;
-import com.sumu.japdemo.mapper.NodeFileMapper;
-import com.sumu.japdemo.mapper.NodeInfoMapper;
 import com.sumu.japdemo.service.FileIndexService;
-import com.sumu.japdemo.service.impl.WebSocketSessionManager;
+import com.sumu.japdemo.service.NodeManagerService;
+import com.sumu.japdemo.socketio.EventLane;
+import com.sumu.japdemo.socketio.NodeEventDispatcher;
+import com.sumu.japdemo.socketio.SessionResumeRegistry;
+import com.sumu.japdemo.store.IndexStore;
+import com.sumu.japdemo.utils.BatchUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 @EnableScheduling
+@Order(1)
 public class NodeCleanupTask implements CommandLineRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(NodeCleanupTask.class);
 
+    @Value("${p2p.reconcile.async:true}")
+    private boolean reconcileAsync;
+
     @Autowired
-    private NodeInfoMapper nodeInfoMapper;
+    private IndexStore indexStore;
 
     @Autowired
-    private NodeFileMapper nodeFileMapper;
+    private NodeManagerService nodeManagerService;
 
     @Autowired
     private FileIndexService fileIndexService;
 
-    @Override
-    public void run(String... args) throws Exception {
-        logger.info("========== 服务器启动 - 开始清理离线节点 ==========");
-        cleanupAllNodes();
-        logger.info("========== 服务器启动 - 离线节点清理完成 ==========");
-    }
-
-    @Transactional
-    public void cleanupAllNodes() {
-        List<NodeInfo> activeNodes = nodeInfoMapper.selectList(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getActive, true)
-        );
-
-        if (activeNodes.isEmpty()) {
-            logger.info("没有需要清理的在线节点");
-            return;
-        }
-
-        List<String> nodeIds = activeNodes.stream()
-                .map(NodeInfo::getNodeId)
-                .collect(Collectors.toList());
+    @Autowired
+    private NodeLivenessTracker livenessTracker;
 
-        logger.info("发现 {} 个标记为在线的旧节点，开始清理: {}", nodeIds.size(), nodeIds);
+    @Autowired
+    private SessionResumeRegistry resumeRegistry;
 
-        for (String nodeId : nodeIds) {
-            unregisterNode(nodeId);
-        }
+    @Autowired
+    private IndexSnapshotTask indexSnapshotTask;
 
-        logger.info("清理完成，共处理 {} 个节点", nodeIds.size());
-    }
+    @Autowired
+    private NodeEventDispatcher dispatcher;
 
-    @Transactional
-    public void unregisterNode(String nodeId) {
-        List<NodeFile> nodeFiles = nodeFileMapper.selectList(
-                new LambdaQueryWrapper<NodeFile>()
-                        .eq(NodeFile::getNodeId, nodeId)
-        );
-
-        List<String> affectedHashes = nodeFiles.stream()
-                .map(NodeFile::getFileHash)
-                .distinct()
-                .collect(Collectors.toList());
-
-        nodeFileMapper.delete(
-                new LambdaQueryWrapper<NodeFile>()
-                        .eq(NodeFile::getNodeId, nodeId)
-        );
-
-        for (String fileHash : affectedHashes) {
-            fileIndexService.updateFileNodeCount(fileHash);
+    /**
+     * 启动对账：同步阶段只把上次运行遗留的在线节点标记为离线并加载索引 (启用快照持久化时从快照和 WAL 恢复)，
+     * 删除残留关联和重算 node_count 按主键区间分块执行，默认放到后台，不阻塞 Socket.IO 开始监听
+     */
+    @Override
+    public void run(String... args) throws Exception {
+        logger.info("========== 服务器启动 - 开始对账离线节点 ==========");
+        long start = System.currentTimeMillis();
+        int deactivated = indexStore.deactivateAllNodes();
+        if (indexSnapshotTask.isEnabled()) {
+            indexSnapshotTask.restore();
+        } else {
+            fileIndexService.loadIndex();
         }
-
-        NodeInfo nodeInfo = nodeInfoMapper.selectOne(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getNodeId, nodeId)
-        );
-        if (nodeInfo != null) {
-            nodeInfo.setActive(false);
-            nodeInfo.setUpdateTime(LocalDateTime.now());
-            nodeInfoMapper.updateById(nodeInfo);
+        logger.info("离线节点标记完成: {} 个节点, 耗时 {} ms", deactivated, System.currentTimeMillis() - start);
+
+        if (reconcileAsync) {
+            Thread thread = new Thread(this::reconcileTables, "startup-reconcile");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            reconcileTables();
         }
-
-        logger.info("节点 {} 已离线，清理了 {} 个文件注册", nodeId, affectedHashes.size());
     }
 
-    @Scheduled(fixedRate = 30000)
-    public void checkDisconnectedNodes() {
-        List<NodeInfo> dbActiveNodes = nodeInfoMapper.selectList(
-                new LambdaQueryWrapper<NodeInfo>()
-                        .eq(NodeInfo::getActive, true)
-        );
-
-        if (dbActiveNodes.isEmpty()) {
-            return;
+    public void reconcileTables() {
+        long start = System.currentTimeMillis();
+        try {
+            IndexStore.ReconcileResult result = indexStore.reconcile();
+            logger.info("========== 启动对账完成: 删除 {} 条节点-文件关联, 重算 {} 个文件计数, 删除 {} 个无节点文件, 耗时 {} ms ==========",
+                    result.getDeletedPairs(), result.getRecounted(), result.getDeletedFiles(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("启动对账失败", e);
         }
+    }
 
-        int disconnectedCount = 0;
-        for (NodeInfo dbNode : dbActiveNodes) {
-            String nodeId = dbNode.getNodeId();
-            boolean isActuallyOnline = WebSocketSessionManager.isSessionActive(nodeId);
-            
-            if (!isActuallyOnline) {
-                logger.warn("节点 {} 数据库标记为在线，但 Socket 连接已断开，清理该节点", nodeId);
-                unregisterNode(nodeId);
-                disconnectedCount++;
+    @Scheduled(fixedDelayString = "${p2p.liveness.cleanup-interval-ms:1000}")
+    public void cleanupExpiredNodes() {
+        List<String> nodeIds;
+        while (!(nodeIds = livenessTracker.pollExpired(BatchUtil.BATCH_SIZE)).isEmpty()) {
+            List<String> expiredNodeIds = new ArrayList<>(nodeIds.size());
+            for (String nodeId : nodeIds) {
+                if (resumeRegistry.expire(nodeId)) {
+                    expiredNodeIds.add(nodeId);
+                } else {
+                    // 到期与重连同时发生，节点已恢复
+                    livenessTracker.touch(nodeId);
+                }
+            }
+            if (expiredNodeIds.isEmpty()) {
+                continue;
             }
+            logger.warn("{} 个节点超时且 Socket 连接已断开，批量清理: {}", expiredNodeIds.size(), expiredNodeIds);
+            unregisterAfterQueued(expiredNodeIds);
         }
+        int expiredSessions = nodeManagerService.expireRegisterSessions();
+        if (expiredSessions > 0) {
+            logger.info("释放 {} 个超时未提交的分块注册会话", expiredSessions);
+        }
+    }
 
-        if (disconnectedCount > 0) {
-            logger.info("定时连接检测: 清理了 {} 个假在线节点", disconnectedCount);
+    /**
+     * 到期节点可能还有排在 BULK 通道里的注册任务，直接注销的话这些任务会在注销后把文件写回。
+     * 在每个节点的 BULK 队列末尾放一个标记，全部标记执行后 (各节点之前排队的任务都已完成) 再批量注销。
+     * 到期的节点已无法恢复会话，不会再有新任务排到标记之后
+     */
+    private void unregisterAfterQueued(List<String> nodeIds) {
+        AtomicInteger remaining = new AtomicInteger(nodeIds.size());
+        for (String nodeId : nodeIds) {
+            dispatcher.submitRequired(EventLane.BULK, nodeId, () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    nodeManagerService.unregisterNodes(nodeIds);
+                }
+            });
         }
     }
 }
@@ -0,0 +1,90 @@
+package com.sumu.japdemo.task;
+
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.index.FileEntry;
+import com.sumu.japdemo.index.FileIndex;
+import com.sumu.japdemo.store.IndexStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * node_count 延迟持久化：内存索引中的做种节点数是权威值，
+ * 变化的哈希只做标记，定时把最新计数合并后批量写入 t_file_info，注册路径不再争用热门文件的行锁
+ */
+@Component
+public class NodeCountFlushTask implements FileIndex.ChangeListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeCountFlushTask.class);
+
+    private final Set<String> dirtyHashes = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    private FileIndex fileIndex;
+
+    @Autowired
+    private IndexStore indexStore;
+
+    @PostConstruct
+    public void init() {
+        fileIndex.addChangeListener(this);
+    }
+
+    @Override
+    public void onSeedersChanged(String fileHash) {
+        dirtyHashes.add(fileHash);
+    }
+
+    public void markDirty(Collection<String> fileHashes) {
+        dirtyHashes.addAll(fileHashes);
+    }
+
+    @Scheduled(fixedDelayString = "${p2p.node-count.flush-interval-ms:2000}")
+    public void flush() {
+        if (dirtyHashes.isEmpty()) {
+            return;
+        }
+        List<FileInfo> seeded = new ArrayList<>();
+        List<String> unseeded = new ArrayList<>();
+        for (String fileHash : dirtyHashes) {
+            // 先移除标记再读计数，读之后的变化会重新标记，留给下一轮
+            dirtyHashes.remove(fileHash);
+            FileEntry entry = fileIndex.getFile(fileHash);
+            if (entry == null) {
+                unseeded.add(fileHash);
+                continue;
+            }
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setFileHash(entry.getFileHash());
+            fileInfo.setFileName(entry.getFileName());
+            fileInfo.setFileSize(entry.getFileSize());
+            fileInfo.setNodeCount(entry.getSeederCount());
+            seeded.add(fileInfo);
+        }
+        try {
+            indexStore.saveFileCounts(seeded, unseeded);
+        } catch (RuntimeException e) {
+            // 写入失败时重新标记，下一轮按届时的计数重试
+            seeded.forEach(fileInfo -> dirtyHashes.add(fileInfo.getFileHash()));
+            dirtyHashes.addAll(unseeded);
+            logger.error("node_count 写回失败，{} 个文件留待下一轮重试", seeded.size() + unseeded.size(), e);
+            return;
+        }
+        logger.debug("node_count 写回: 更新 {} 个文件, 删除 {} 个无节点文件", seeded.size(), unseeded.size());
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+}
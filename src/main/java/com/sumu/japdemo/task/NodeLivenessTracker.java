@@ -0,0 +1,143 @@
+package com.sumu.japdemo.task;
+
+import com.sumu.japdemo.socketio.PresenceRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 节点存活跟踪：连接/心跳事件刷新节点的截止时间，到期检查挂在时间轮上，
+ * 只有截止时间真正已过且连接已断开的节点才会进入待清理队列，由 NodeCleanupTask 批量清理
+ */
+@Component
+public class NodeLivenessTracker {
+
+    @Value("${p2p.liveness.timeout-ms:90000}")
+    private long timeoutMs;
+
+    @Value("${p2p.liveness.tick-ms:1000}")
+    private long tickMs;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    private final ConcurrentHashMap<String, Deadline> deadlines = new ConcurrentHashMap<>();
+
+    private final Queue<String> expired = new ConcurrentLinkedQueue<>();
+
+    private HashedWheelTimer timer;
+
+    @PostConstruct
+    public void start() {
+        timer = new HashedWheelTimer(new DefaultThreadFactory("node-liveness", true),
+                tickMs, TimeUnit.MILLISECONDS, 512);
+        timer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        timer.stop();
+    }
+
+    public void touch(String nodeId) {
+        touch(nodeId, timeoutMs);
+    }
+
+    /**
+     * 把节点的截止时间设为 delayMs 之后，比已挂在时间轮上的检查更早时 (如断线宽限期) 重新挂一次
+     */
+    public void touch(String nodeId, long delayMs) {
+        long deadline = System.currentTimeMillis() + delayMs;
+        deadlines.compute(nodeId, (key, current) -> {
+            if (current == null) {
+                current = new Deadline();
+            } else if (deadline >= current.checkAt) {
+                current.deadline = deadline;
+                return current;
+            } else {
+                current.timeout.cancel();
+            }
+            current.deadline = deadline;
+            schedule(key, current, delayMs);
+            return current;
+        });
+    }
+
+    public void forget(String nodeId) {
+        Deadline state = deadlines.remove(nodeId);
+        if (state != null) {
+            state.timeout.cancel();
+        }
+    }
+
+    public int trackedCount() {
+        return deadlines.size();
+    }
+
+    public List<String> pollExpired(int max) {
+        List<String> nodeIds = new ArrayList<>();
+        String nodeId;
+        while (nodeIds.size() < max && (nodeId = expired.poll()) != null) {
+            nodeIds.add(nodeId);
+        }
+        return nodeIds;
+    }
+
+    /**
+     * 在 deadlines.compute 中调用
+     */
+    private void schedule(String nodeId, Deadline state, long delayMs) {
+        state.checkAt = System.currentTimeMillis() + delayMs;
+        state.timeout = timer.newTimeout(timeout -> onDeadline(timeout, nodeId), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void onDeadline(Timeout timeout, String nodeId) {
+        boolean[] expire = {false};
+        deadlines.computeIfPresent(nodeId, (key, state) -> {
+            if (state.timeout != timeout) {
+                // 已被更早的检查取代
+                return state;
+            }
+            long remaining = state.deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                // 期间收到过心跳，按新的截止时间重新挂到时间轮上
+                schedule(key, state, remaining);
+                return state;
+            }
+            if (presenceRegistry.isOnline(key)) {
+                state.deadline = System.currentTimeMillis() + timeoutMs;
+                schedule(key, state, timeoutMs);
+                return state;
+            }
+            expire[0] = true;
+            return null;
+        });
+        if (expire[0]) {
+            expired.add(nodeId);
+        }
+    }
+
+    private static final class Deadline {
+
+        private long deadline;
+
+        /**
+         * 当前挂在时间轮上的检查时间
+         */
+        private long checkAt;
+
+        private Timeout timeout;
+    }
+}
@@ -0,0 +1,51 @@
+package com.sumu.japdemo.utils;
+
+import com.baomidou.mybatisplus.extension.toolkit.SqlHelper;
+import org.apache.ibatis.logging.Log;
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.session.SqlSession;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 批量 SQL 工具：把大集合切成多行语句，并在 MyBatis BATCH 执行器中执行
+ */
+public final class BatchUtil {
+
+    public static final int BATCH_SIZE = 1000;
+
+    private static final Log log = LogFactory.getLog(BatchUtil.class);
+
+    private BatchUtil() {
+    }
+
+    public static <T> List<List<T>> partition(Collection<T> items) {
+        return partition(items, BATCH_SIZE);
+    }
+
+    public static <T> List<List<T>> partition(Collection<T> items, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        List<T> chunk = new ArrayList<>(Math.min(size, items.size()));
+        for (T item : items) {
+            chunk.add(item);
+            if (chunk.size() == size) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(size);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * 在当前 Spring 事务中以 BATCH 执行器执行，返回前会 flush 所有语句
+     */
+    public static void executeBatch(Class<?> entityClass, Consumer<SqlSession> consumer) {
+        SqlHelper.executeBatch(entityClass, log, consumer);
+    }
+}
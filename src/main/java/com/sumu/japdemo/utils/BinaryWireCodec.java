@@ -0,0 +1,498 @@
+package com.sumu.japdemo.utils;
+
+import com.sumu.japdemo.entity.dto.DownloadResult;
+import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.entity.dto.FileSearchResult;
+import com.sumu.japdemo.entity.dto.SearchPage;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 协商为 binary 编码的连接使用的列式二进制格式，作为 Socket.IO 二进制附件收发:
+ * <pre>
+ * u8 版本 | u8 类型 | varint 条数 | 字符串表 (varint 个数, 每个 varint 长度 + UTF-8)
+ * 哈希列: 每条 32 字节原始 SHA-256 | 例外哈希: varint 个数, 每个 varint 行号 + varint 字符串序号
+ * 文件名列: varint 字符串序号 + 1 | 大小列: varint 大小 + 1  (0 表示 null)
+ * 搜索/下载另有: 节点数列 varint + 1 | 节点列: varint 个数 + 1, 每个 varint 字符串序号
+ * 搜索另有: 精确匹配位图 (条数 + 7) / 8 字节
+ * 分页搜索在搜索的基础上另有: varint query 字符串序号 + 1 | varint nextCursor 字符串序号 + 1 | u8 hasMore (0 null, 1 false, 2 true)
+ *                           | varint totalEstimate + 1
+ * </pre>
+ * 不是 64 位小写十六进制的哈希在哈希列中写 32 个 0，原文放在例外哈希中。
+ * 文件名和节点 ID 都进入字符串表，重复的值只传一次
+ */
+public final class BinaryWireCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final byte KIND_REGISTER = 1;
+
+    private static final byte KIND_SEARCH = 2;
+
+    private static final byte KIND_DOWNLOAD = 3;
+
+    private static final byte KIND_SEARCH_PAGE = 4;
+
+    private static final int HASH_BYTES = 32;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private BinaryWireCodec() {
+    }
+
+    public static byte[] encodeRegisters(Collection<FileRegister> registers) {
+        Writer writer = new Writer(KIND_REGISTER, registers.size());
+        for (FileRegister register : registers) {
+            writer.addFile(register.getHash(), register.getFileName(), register.getFileSize());
+        }
+        return writer.toBytes();
+    }
+
+    /**
+     * 直接解码为 FileRegister，不经过 Map；重复的文件名共用同一个 String 实例。格式错误时抛出 IllegalArgumentException
+     */
+    public static List<FileRegister> decodeRegisters(byte[] data) {
+        Reader reader = new Reader(data, KIND_REGISTER);
+        List<FileRegister> registers = new ArrayList<>(reader.count);
+        for (int i = 0; i < reader.count; i++) {
+            FileRegister register = new FileRegister();
+            register.setHash(reader.hashes[i]);
+            register.setFileName(reader.names[i]);
+            register.setFileSize(reader.sizes[i]);
+            registers.add(register);
+        }
+        return registers;
+    }
+
+    public static byte[] encodeSearchResults(List<FileSearchResult> results) {
+        Writer writer = new Writer(KIND_SEARCH, results.size());
+        addSearchResults(writer, results);
+        return writer.toBytes();
+    }
+
+    public static List<FileSearchResult> decodeSearchResults(byte[] data) {
+        return searchResults(new Reader(data, KIND_SEARCH));
+    }
+
+    public static byte[] encodeSearchPage(SearchPage page) {
+        List<FileSearchResult> results = page.getResults() == null ? new ArrayList<>() : page.getResults();
+        Writer writer = new Writer(KIND_SEARCH_PAGE, results.size());
+        addSearchResults(writer, results);
+        writer.setPage(page.getQuery(), page.getNextCursor(), page.getHasMore(), page.getTotalEstimate());
+        return writer.toBytes();
+    }
+
+    public static SearchPage decodeSearchPage(byte[] data) {
+        Reader reader = new Reader(data, KIND_SEARCH_PAGE);
+        SearchPage page = new SearchPage();
+        page.setQuery(reader.query);
+        page.setResults(searchResults(reader));
+        page.setNextCursor(reader.nextCursor);
+        page.setHasMore(reader.hasMore);
+        page.setTotalEstimate(reader.totalEstimate);
+        return page;
+    }
+
+    private static void addSearchResults(Writer writer, List<FileSearchResult> results) {
+        for (FileSearchResult result : results) {
+            writer.addFile(result.getHash(), result.getFileName(), result.getFileSize());
+            writer.addNodes(result.getNodeCount(), result.getNodes());
+            writer.addFlag(Boolean.TRUE.equals(result.getIsExactMatch()));
+        }
+    }
+
+    private static List<FileSearchResult> searchResults(Reader reader) {
+        List<FileSearchResult> results = new ArrayList<>(reader.count);
+        for (int i = 0; i < reader.count; i++) {
+            FileSearchResult result = new FileSearchResult();
+            result.setHash(reader.hashes[i]);
+            result.setFileName(reader.names[i]);
+            result.setFileSize(reader.sizes[i]);
+            result.setNodeCount(reader.nodeCounts[i]);
+            result.setNodes(reader.nodes[i]);
+            result.setIsExactMatch(reader.flags[i]);
+            results.add(result);
+        }
+        return results;
+    }
+
+    public static byte[] encodeDownloadResult(DownloadResult result) {
+        Writer writer = new Writer(KIND_DOWNLOAD, 1);
+        writer.addFile(result.getFileHash(), result.getFileName(), result.getFileSize());
+        writer.addNodes(result.getNodeCount(), result.getNodes());
+        return writer.toBytes();
+    }
+
+    public static DownloadResult decodeDownloadResult(byte[] data) {
+        Reader reader = new Reader(data, KIND_DOWNLOAD);
+        if (reader.count != 1) {
+            throw new IllegalArgumentException("下载结果应只有 1 条, 实际 " + reader.count);
+        }
+        DownloadResult result = new DownloadResult();
+        result.setFileHash(reader.hashes[0]);
+        result.setFileName(reader.names[0]);
+        result.setFileSize(reader.sizes[0]);
+        result.setNodeCount(reader.nodeCounts[0]);
+        result.setNodes(reader.nodes[0]);
+        return result;
+    }
+
+    /**
+     * 先收集各列，字符串表确定后一次写出
+     */
+    private static final class Writer {
+
+        private final byte kind;
+        private final int count;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+        private final byte[] hashes;
+        private final List<Integer> rawRows = new ArrayList<>();
+        private final List<Integer> rawStrings = new ArrayList<>();
+        private final int[] names;
+        private final long[] sizes;
+        private final int[] nodeCounts;
+        private final int[][] nodes;
+        private final byte[] flags;
+        private int row;
+        private int nodeRow;
+        private int flagRow;
+        private int query;
+        private int nextCursor;
+        private int hasMore;
+        private long totalEstimate;
+
+        Writer(byte kind, int count) {
+            this.kind = kind;
+            this.count = count;
+            hashes = new byte[count * HASH_BYTES];
+            names = new int[count];
+            sizes = new long[count];
+            nodeCounts = kind == KIND_REGISTER ? null : new int[count];
+            nodes = kind == KIND_REGISTER ? null : new int[count][];
+            flags = kind == KIND_SEARCH || kind == KIND_SEARCH_PAGE ? new byte[(count + 7) / 8] : null;
+        }
+
+        void addFile(String hash, String fileName, Long fileSize) {
+            if (!writeHash(hash, row * HASH_BYTES)) {
+                rawRows.add(row);
+                rawStrings.add(intern(hash));
+            }
+            names[row] = fileName == null ? 0 : intern(fileName) + 1;
+            sizes[row] = fileSize == null ? 0 : fileSize + 1;
+            row++;
+        }
+
+        void addNodes(Integer nodeCount, List<String> nodeIds) {
+            nodeCounts[nodeRow] = nodeCount == null ? 0 : nodeCount + 1;
+            if (nodeIds != null) {
+                int[] indexes = new int[nodeIds.size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = intern(nodeIds.get(i));
+                }
+                nodes[nodeRow] = indexes;
+            }
+            nodeRow++;
+        }
+
+        void setPage(String query, String nextCursor, Boolean hasMore, Integer totalEstimate) {
+            this.query = query == null ? 0 : intern(query) + 1;
+            this.nextCursor = nextCursor == null ? 0 : intern(nextCursor) + 1;
+            this.hasMore = hasMore == null ? 0 : hasMore ? 2 : 1;
+            this.totalEstimate = totalEstimate == null ? 0 : totalEstimate + 1L;
+        }
+
+        void addFlag(boolean flag) {
+            if (flag) {
+                flags[flagRow >>> 3] |= 1 << (flagRow & 7);
+            }
+            flagRow++;
+        }
+
+        byte[] toBytes() {
+            Output out = new Output(hashes.length + count * 4 + 64);
+            out.writeByte(VERSION);
+            out.writeByte(kind);
+            out.writeVarint(count);
+            out.writeVarint(table.size());
+            for (String value : table) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                out.writeVarint(utf8.length);
+                out.write(utf8, 0, utf8.length);
+            }
+            out.write(hashes, 0, hashes.length);
+            out.writeVarint(rawRows.size());
+            for (int i = 0; i < rawRows.size(); i++) {
+                out.writeVarint(rawRows.get(i));
+                out.writeVarint(rawStrings.get(i));
+            }
+            for (int name : names) {
+                out.writeVarint(name);
+            }
+            for (long size : sizes) {
+                out.writeVarint(size);
+            }
+            if (nodeCounts != null) {
+                for (int nodeCount : nodeCounts) {
+                    out.writeVarint(nodeCount);
+                }
+                for (int[] indexes : nodes) {
+                    if (indexes == null) {
+                        out.writeVarint(0);
+                        continue;
+                    }
+                    out.writeVarint(indexes.length + 1);
+                    for (int index : indexes) {
+                        out.writeVarint(index);
+                    }
+                }
+            }
+            if (flags != null) {
+                out.write(flags, 0, flags.length);
+            }
+            if (kind == KIND_SEARCH_PAGE) {
+                out.writeVarint(query);
+                out.writeVarint(nextCursor);
+                out.writeByte(hasMore);
+                out.writeVarint(totalEstimate);
+            }
+            return out.toBytes();
+        }
+
+        private int intern(String value) {
+            Integer index = strings.get(value);
+            if (index == null) {
+                index = table.size();
+                strings.put(value, index);
+                table.add(value);
+            }
+            return index;
+        }
+
+        /**
+         * 64 位小写十六进制时写入 32 字节并返回 true，否则该位置保持为 0
+         */
+        private boolean writeHash(String hash, int offset) {
+            if (hash == null || hash.length() != HASH_BYTES * 2) {
+                return false;
+            }
+            for (int i = 0; i < HASH_BYTES; i++) {
+                int high = hexValue(hash.charAt(i * 2));
+                int low = hexValue(hash.charAt(i * 2 + 1));
+                if (high < 0 || low < 0) {
+                    Arrays.fill(hashes, offset, offset + HASH_BYTES, (byte) 0);
+                    return false;
+                }
+                hashes[offset + i] = (byte) (high << 4 | low);
+            }
+            return true;
+        }
+
+        private static int hexValue(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            }
+            if (c >= 'a' && c <= 'f') {
+                return c - 'a' + 10;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 一次读出全部列，越界或版本、类型不符时抛出 IllegalArgumentException
+     */
+    private static final class Reader {
+
+        final int count;
+        final String[] hashes;
+        final String[] names;
+        final Long[] sizes;
+        Integer[] nodeCounts;
+        List<String>[] nodes;
+        Boolean[] flags;
+        String query;
+        String nextCursor;
+        Boolean hasMore;
+        Integer totalEstimate;
+
+        @SuppressWarnings("unchecked")
+        Reader(byte[] data, byte kind) {
+            if (data == null) {
+                throw new IllegalArgumentException("二进制数据为空");
+            }
+            ByteBuffer in = ByteBuffer.wrap(data);
+            try {
+                byte version = in.get();
+                if (version != VERSION) {
+                    throw new IllegalArgumentException("不支持的编码版本: " + version);
+                }
+                byte actualKind = in.get();
+                if (actualKind != kind) {
+                    throw new IllegalArgumentException("数据类型不符: " + actualKind);
+                }
+                count = readCount(in, HASH_BYTES);
+                String[] table = new String[readCount(in, 1)];
+                for (int i = 0; i < table.length; i++) {
+                    int length = readCount(in, 1);
+                    table[i] = new String(data, in.position(), length, StandardCharsets.UTF_8);
+                    in.position(in.position() + length);
+                }
+
+                hashes = new String[count];
+                char[] chars = new char[HASH_BYTES * 2];
+                for (int i = 0; i < count; i++) {
+                    for (int b = 0; b < HASH_BYTES; b++) {
+                        int value = in.get();
+                        chars[b * 2] = HEX[(value >> 4) & 0xF];
+                        chars[b * 2 + 1] = HEX[value & 0xF];
+                    }
+                    hashes[i] = new String(chars);
+                }
+                int rawCount = readCount(in, 2);
+                for (int i = 0; i < rawCount; i++) {
+                    hashes[index(readVarint(in), count)] = table[index(readVarint(in), table.length)];
+                }
+
+                names = new String[count];
+                for (int i = 0; i < count; i++) {
+                    long name = readVarint(in);
+                    names[i] = name == 0 ? null : table[index(name - 1, table.length)];
+                }
+                sizes = new Long[count];
+                for (int i = 0; i < count; i++) {
+                    long size = readVarint(in);
+                    sizes[i] = size == 0 ? null : size - 1;
+                }
+                if (kind == KIND_REGISTER) {
+                    return;
+                }
+
+                nodeCounts = new Integer[count];
+                for (int i = 0; i < count; i++) {
+                    long nodeCount = readVarint(in);
+                    nodeCounts[i] = nodeCount == 0 ? null : (int) (nodeCount - 1);
+                }
+                nodes = new List[count];
+                for (int i = 0; i < count; i++) {
+                    long length = readVarint(in);
+                    if (length == 0) {
+                        continue;
+                    }
+                    List<String> nodeIds = new ArrayList<>(index(length - 1, in.remaining() + 1));
+                    for (long n = 1; n < length; n++) {
+                        nodeIds.add(table[index(readVarint(in), table.length)]);
+                    }
+                    nodes[i] = nodeIds;
+                }
+                if (kind == KIND_DOWNLOAD) {
+                    return;
+                }
+                flags = new Boolean[count];
+                byte[] bits = new byte[(count + 7) / 8];
+                in.get(bits);
+                for (int i = 0; i < count; i++) {
+                    flags[i] = (bits[i >>> 3] & (1 << (i & 7))) != 0;
+                }
+                if (kind == KIND_SEARCH) {
+                    return;
+                }
+
+                long queryIndex = readVarint(in);
+                query = queryIndex == 0 ? null : table[index(queryIndex - 1, table.length)];
+                long cursorIndex = readVarint(in);
+                nextCursor = cursorIndex == 0 ? null : table[index(cursorIndex - 1, table.length)];
+                byte more = in.get();
+                if (more < 0 || more > 2) {
+                    throw new IllegalArgumentException("hasMore 取值无效: " + more);
+                }
+                hasMore = more == 0 ? null : more == 2;
+                long total = readVarint(in);
+                totalEstimate = total == 0 ? null : (int) (total - 1);
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("二进制数据不完整", e);
+            }
+        }
+
+        /**
+         * 读取条数并按每条至少 minBytes 字节检查，避免按伪造的条数分配数组
+         */
+        private static int readCount(ByteBuffer in, int minBytes) {
+            long count = readVarint(in);
+            if (count < 0 || count > in.remaining() / minBytes) {
+                throw new IllegalArgumentException("条数超出数据长度: " + count);
+            }
+            return (int) count;
+        }
+
+        private static int index(long value, int bound) {
+            if (value < 0 || value >= bound) {
+                throw new IllegalArgumentException("序号越界: " + value);
+            }
+            return (int) value;
+        }
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint 过长");
+    }
+
+    /**
+     * 可增长的字节缓冲，不做同步
+     */
+    private static final class Output {
+
+        private byte[] buf;
+        private int size;
+
+        Output(int capacity) {
+            buf = new byte[Math.max(16, capacity)];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+        }
+
+        byte[] toBytes() {
+            return size == buf.length ? buf : Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+-- 紧凑表结构 (p2p.store.type: mysql-compact)，与 schema.sql 中的 t_node_info 共用
+-- 哈希存为 BINARY(32)，关联表用 t_node_info.id 代替节点 ID 字符串，以 (node_key, file_hash) 为聚簇主键，
+-- 原来的 idx_node_file / idx_node_id 由主键代替。只有 64 位小写十六进制的 SHA-256 哈希可以写入
+-- 从旧表迁移: 先执行本脚本建表，在旧版本运行期间开启 p2p.store.migration.enabled，完成后切换 p2p.store.type 并重启
+
+-- 文件信息表
+CREATE TABLE IF NOT EXISTS `t_file_info_compact` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    `file_hash` BINARY(32) NOT NULL COMMENT '文件SHA-256哈希值',
+    `file_name` VARCHAR(500) NOT NULL COMMENT '文件名',
+    `file_size` BIGINT NOT NULL COMMENT '文件大小(字节)',
+    `node_count` INT NOT NULL DEFAULT 0 COMMENT '拥有该文件的节点数量',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY `idx_file_hash` (`file_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='文件信息表 (紧凑)';
+
+-- 节点文件关联表
+CREATE TABLE IF NOT EXISTS `t_node_file_compact` (
+    `node_key` BIGINT NOT NULL COMMENT 't_node_info.id',
+    `file_hash` BINARY(32) NOT NULL COMMENT '文件哈希值',
+    PRIMARY KEY (`node_key`, `file_hash`),
+    KEY `idx_file_hash` (`file_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='节点文件关联表 (紧凑)';
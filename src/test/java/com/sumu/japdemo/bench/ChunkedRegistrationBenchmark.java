@@ -0,0 +1,120 @@
+package com.sumu.japdemo.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.entity.dto.RegisterChunk;
+import com.sumu.japdemo.index.FileEntry;
+import com.sumu.japdemo.index.FileIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个大文件库节点注册时，除索引本身以外常驻的堆: 一次 register-files (整帧 + List&lt;Map&gt; + List&lt;FileRegister&gt;)
+ * vs 分块注册 (一块的帧和解码结果 + 已上报集合)。两种方式都先注册一半旧文件，再上报一份半新半旧的文件库。
+ * 运行: java -Xmx4g ... ChunkedRegistrationBenchmark [文件数] [每块文件数]
+ */
+public class ChunkedRegistrationBenchmark {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String NODE_ID = "seedbox";
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        int fileCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int chunkFiles = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        System.out.printf("%d 个文件, 每块 %d 个%n", fileCount, chunkFiles);
+        full(fileCount);
+        chunked(fileCount, chunkFiles);
+    }
+
+    private static void full(int fileCount) throws Exception {
+        FileIndex index = new FileIndex(16);
+        index.replaceFiles(NODE_ID, registers(fileCount / 2, fileCount));
+
+        long before = usedHeap();
+        byte[] frame = MAPPER.writeValueAsBytes(registers(0, fileCount));
+        List<Map<String, Object>> files = MAPPER.readValue(frame, new TypeReference<List<Map<String, Object>>>() {
+        });
+        List<FileRegister> fileList = new ArrayList<>(files.size());
+        for (Map<String, Object> file : files) {
+            FileRegister register = new FileRegister();
+            register.setHash(String.valueOf(file.get("hash")));
+            register.setFileName(String.valueOf(file.get("fileName")));
+            register.setFileSize(((Number) file.get("fileSize")).longValue());
+            fileList.add(register);
+        }
+        long retained = usedHeap() - before;
+        index.replaceFiles(NODE_ID, fileList);
+        sink = new Object[]{frame, files, fileList};
+
+        System.out.printf("register-files: 帧 %6.1f MB, 常驻 %7.1f MB, 注册后文件 %d%n",
+                frame.length / 1e6, retained / 1e6, index.getFileHashes(NODE_ID).size());
+        sink = null;
+        index.shutdown();
+    }
+
+    private static void chunked(int fileCount, int chunkFiles) throws Exception {
+        FileIndex index = new FileIndex(16);
+        index.replaceFiles(NODE_ID, registers(fileCount / 2, fileCount));
+
+        FileIndex.StagedFiles staged = index.beginStaging();
+        long chunkRetained = 0;
+        int frameBytes = 0;
+        long seq = 0;
+        for (int from = 0; from < fileCount; from += chunkFiles) {
+            RegisterChunk outbound = new RegisterChunk();
+            outbound.setSessionId("bench");
+            outbound.setSeq(++seq);
+            outbound.setFiles(registers(from, Math.min(fileCount, from + chunkFiles)));
+            long before = from == 0 ? usedHeap() : 0;
+            byte[] frame = MAPPER.writeValueAsBytes(outbound);
+            RegisterChunk chunk = MAPPER.readValue(frame, RegisterChunk.class);
+            if (from == 0) {
+                chunkRetained = usedHeap() - before;
+                frameBytes = frame.length;
+            }
+            index.stageFiles(NODE_ID, chunk.getFiles(), staged);
+        }
+        index.removeFiles(NODE_ID, hashes(index.unstagedFiles(NODE_ID, staged)));
+
+        long stagedRetained = staged.footprint();
+
+        System.out.printf("分块注册:       帧 %6.1f MB, 常驻 %7.1f MB (一块 %.2f MB + 已上报集合 %.1f MB), 注册后文件 %d%n",
+                frameBytes / 1e6, (chunkRetained + stagedRetained) / 1e6, chunkRetained / 1e6, stagedRetained / 1e6,
+                index.getFileHashes(NODE_ID).size());
+        index.shutdown();
+    }
+
+    private static List<FileRegister> registers(int from, int to) {
+        List<FileRegister> registers = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            FileRegister register = new FileRegister();
+            register.setHash(String.format("%016x%048x", (long) i * 0x9E3779B97F4A7C15L, i));
+            register.setFileName("library/disc-" + (i / 100) + "/track-" + i + ".flac");
+            register.setFileSize(1024L * i);
+            registers.add(register);
+        }
+        return registers;
+    }
+
+    private static List<String> hashes(List<FileEntry> entries) {
+        List<String> hashes = new ArrayList<>(entries.size());
+        entries.forEach(entry -> hashes.add(entry.getFileHash()));
+        return hashes;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
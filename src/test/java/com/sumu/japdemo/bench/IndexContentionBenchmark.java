@@ -0,0 +1,121 @@
+package com.sumu.japdemo.bench;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.index.FileEntry;
+import com.sumu.japdemo.index.FileIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多线程混合负载下的索引吞吐: 单分片 (等同于原来的全局锁) vs 按哈希前缀分片。
+ * 每个线程模拟一批节点反复整体注册、查下载节点、按名搜索和注销，线程数从 1 增加到 2 倍核数。
+ * 运行: java ... IndexContentionBenchmark [分片数] [每轮秒数]
+ */
+public class IndexContentionBenchmark {
+
+    private static final int FILE_COUNT = 100_000;
+
+    private static final int FILES_PER_NODE = 200;
+
+    private static final int NODES_PER_THREAD = 64;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        int shardCount = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(7);
+        String[] hashes = new String[FILE_COUNT];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            StringBuilder hash = new StringBuilder(64);
+            for (int j = 0; j < 64; j++) {
+                hash.append(Character.forDigit(random.nextInt(16), 16));
+            }
+            hashes[i] = hash.toString();
+        }
+
+        System.out.printf("核数 %d, 每轮 %d 秒%n", cores, seconds);
+        System.out.printf("%-8s %18s %18s%n", "threads", "1 shard ops/s", shardCount + " shards ops/s");
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            run(1, threads, 1, hashes);
+            double single = run(1, threads, seconds, hashes);
+            run(shardCount, threads, 1, hashes);
+            double sharded = run(shardCount, threads, seconds, hashes);
+            System.out.printf("%-8d %18.0f %18.0f%n", threads, single, sharded);
+        }
+    }
+
+    private static double run(int shardCount, int threads, int seconds, String[] hashes) throws InterruptedException {
+        FileIndex index = new FileIndex(shardCount);
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long done = 0;
+                while (System.nanoTime() < deadline) {
+                    String nodeId = "node-" + worker + "-" + rnd.nextInt(NODES_PER_THREAD);
+                    int op = rnd.nextInt(100);
+                    if (op < 10) {
+                        index.replaceFiles(nodeId, registers(hashes, rnd));
+                    } else if (op < 15) {
+                        index.removeNode(nodeId);
+                    } else if (op < 90) {
+                        FileEntry entry = index.getFile(hashes[skewed(rnd)]);
+                        if (entry != null) {
+                            index.forEachSeeder(entry, id -> sink = id);
+                        }
+                    } else {
+                        index.forEachByName("file-" + rnd.nextInt(1000) + "7", entry -> sink = entry);
+                    }
+                    done++;
+                }
+                ops.add(done);
+            });
+            thread.start();
+            workers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        index.shutdown();
+        return ops.sum() / (double) seconds;
+    }
+
+    private static List<FileRegister> registers(String[] hashes, ThreadLocalRandom rnd) {
+        List<FileRegister> registers = new ArrayList<>(FILES_PER_NODE);
+        for (int i = 0; i < FILES_PER_NODE; i++) {
+            int f = skewed(rnd);
+            FileRegister register = new FileRegister();
+            register.setHash(hashes[f]);
+            register.setFileName("file-" + f + ".mp4");
+            register.setFileSize(1024L * f);
+            registers.add(register);
+        }
+        return registers;
+    }
+
+    /**
+     * 偏斜分布，少数热门文件被大量节点注册和查询
+     */
+    private static int skewed(ThreadLocalRandom rnd) {
+        double u = rnd.nextDouble();
+        return (int) (FILE_COUNT * u * u * u);
+    }
+}
@@ -0,0 +1,121 @@
+package com.sumu.japdemo.bench;
+
+import com.sumu.japdemo.index.FileIndex;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每条 (节点, 文件) 关联占用的堆内存: 紧凑索引 vs 原来的字符串键 ConcurrentHashMap 结构。
+ * 两种结构使用相同的文件元数据，哈希字符串按每次注册反序列化得到的新实例计算，与线上一致。
+ * 运行: java -Xmx8g ... IndexMemoryBenchmark [节点数] [每节点文件数] [文件总数]
+ */
+public class IndexMemoryBenchmark {
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int filesPerNode = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int fileCount = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        String[] nodeIds = new String[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIds[i] = UUID.randomUUID().toString();
+        }
+        Random random = new Random(7);
+        String[] hashes = new String[fileCount];
+        String[] names = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            StringBuilder hash = new StringBuilder(64);
+            for (int j = 0; j < 64; j++) {
+                hash.append(Character.forDigit(random.nextInt(16), 16));
+            }
+            hashes[i] = hash.toString();
+            names[i] = "file-" + i + ".mp4";
+        }
+        int[][] assignments = new int[nodeCount][filesPerNode];
+        for (int[] files : assignments) {
+            for (int j = 0; j < filesPerNode; j++) {
+                // 偏斜分布，少数热门文件有大量做种节点
+                double u = random.nextDouble();
+                files[j] = (int) (fileCount * u * u * u);
+            }
+        }
+
+        long base = usedHeap();
+        Object legacy = buildLegacy(nodeIds, hashes, names, assignments);
+        long legacyBytes = usedHeap() - base;
+        long pairs = countPairs(legacy);
+        sink = legacy;
+        legacy = null;
+        sink = null;
+
+        base = usedHeap();
+        FileIndex index = new FileIndex(16);
+        for (int n = 0; n < nodeCount; n++) {
+            for (int f : assignments[n]) {
+                index.addFile(nodeIds[n], new String(hashes[f]), names[f], 1024L * f);
+            }
+        }
+        long compactBytes = usedHeap() - base;
+        sink = index;
+
+        System.out.printf("节点 %d, 文件 %d, 关联 %d%n", nodeCount, index.size(), pairs);
+        System.out.printf("字符串键结构: %,14d bytes, %7.1f bytes/关联%n", legacyBytes, legacyBytes / (double) pairs);
+        System.out.printf("紧凑索引:     %,14d bytes, %7.1f bytes/关联%n", compactBytes, compactBytes / (double) pairs);
+    }
+
+    /**
+     * 原 FileIndex 的存储形状: 哈希 -> (元数据, 做种节点集合)，节点 -> 哈希集合
+     */
+    private static Object buildLegacy(String[] nodeIds, String[] hashes, String[] names, int[][] assignments) {
+        ConcurrentHashMap<String, LegacyEntry> files = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Set<String>> nodeFiles = new ConcurrentHashMap<>();
+        for (int n = 0; n < nodeIds.length; n++) {
+            for (int f : assignments[n]) {
+                String hash = new String(hashes[f]);
+                files.computeIfAbsent(hash, key -> new LegacyEntry(key, names[f], 1024L * f)).seeders.add(nodeIds[n]);
+                nodeFiles.computeIfAbsent(nodeIds[n], key -> ConcurrentHashMap.newKeySet()).add(hash);
+            }
+        }
+        return new Object[]{files, nodeFiles};
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long countPairs(Object legacy) {
+        ConcurrentHashMap<String, Set<String>> nodeFiles = (ConcurrentHashMap<String, Set<String>>) ((Object[]) legacy)[1];
+        return nodeFiles.values().stream().mapToLong(Set::size).sum();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class LegacyEntry {
+
+        private final String fileHash;
+        private final String fileName;
+        private final String lowerFileName;
+        private final Long fileSize;
+        private final Set<String> seeders = ConcurrentHashMap.newKeySet();
+
+        private LegacyEntry(String fileHash, String fileName, Long fileSize) {
+            this.fileHash = fileHash;
+            this.fileName = fileName;
+            this.lowerFileName = fileName.toLowerCase();
+            this.fileSize = fileSize;
+        }
+    }
+}
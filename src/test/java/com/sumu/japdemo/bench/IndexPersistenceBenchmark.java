@@ -0,0 +1,125 @@
+package com.sumu.japdemo.bench;
+
+import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.index.FileIndex;
+import com.sumu.japdemo.index.IndexPersistence;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 快照 + WAL 持久化的开销和重启恢复耗时:
+ * 1. 开启 WAL 前后整体注册的吞吐 (WAL 只写入页缓存，落盘由定时 sync 完成)
+ * 2. 写快照的耗时和大小
+ * 3. 从快照 + WAL 尾部恢复到一个新索引的耗时
+ * 运行: java ... IndexPersistenceBenchmark [节点数] [每节点文件数] [快照后追加的注册次数]
+ */
+public class IndexPersistenceBenchmark {
+
+    private static final int FILE_COUNT = 200_000;
+
+    public static void main(String[] args) throws IOException {
+        int nodeCount = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int filesPerNode = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int tailOps = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        Random random = new Random(11);
+        String[] hashes = new String[FILE_COUNT];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            StringBuilder hash = new StringBuilder(64);
+            for (int j = 0; j < 64; j++) {
+                hash.append(Character.forDigit(random.nextInt(16), 16));
+            }
+            hashes[i] = hash.toString();
+        }
+        List<List<FileRegister>> batches = new ArrayList<>(nodeCount);
+        for (int n = 0; n < nodeCount; n++) {
+            batches.add(registers(hashes, random, filesPerNode));
+        }
+
+        // 预热
+        load(new FileIndex(16), batches, Math.min(nodeCount, 2_000));
+        double plain = load(new FileIndex(16), batches, nodeCount);
+
+        Path dir = Files.createTempDirectory("index-persistence");
+        try {
+            FileIndex index = new FileIndex(16);
+            IndexPersistence persistence = new IndexPersistence(index, dir);
+            persistence.restore();
+            Map<String, String> sessions = new HashMap<>();
+            for (int n = 0; n < nodeCount; n++) {
+                sessions.put("node-" + n, "token-" + n);
+            }
+            double logged = load(index, batches, nodeCount);
+            long walBytes = persistence.walBytes();
+
+            long start = System.nanoTime();
+            long snapshotBytes = persistence.snapshot(sessions);
+            double snapshotMs = (System.nanoTime() - start) / 1e6;
+
+            for (int i = 0; i < tailOps; i++) {
+                int n = random.nextInt(nodeCount);
+                index.replaceFiles("node-" + n, registers(hashes, random, filesPerNode));
+            }
+            persistence.close();
+
+            FileIndex restored = new FileIndex(16);
+            IndexPersistence reader = new IndexPersistence(restored, dir);
+            start = System.nanoTime();
+            IndexPersistence.RestoreResult result = reader.restore();
+            double restoreMs = (System.nanoTime() - start) / 1e6;
+            reader.close();
+
+            System.out.printf("%d 节点 x %d 文件, 索引 %d 个文件%n", nodeCount, filesPerNode, index.size());
+            System.out.printf("注册吞吐: 无 WAL %.0f 节点/s, 有 WAL %.0f 节点/s (%.1f MB/s WAL)%n",
+                    plain, logged, walBytes / 1e6 / (nodeCount / logged));
+            System.out.printf("快照: %.1f MB, %.0f ms%n", snapshotBytes / 1e6, snapshotMs);
+            System.out.printf("恢复: %.0f ms (快照 + %d 条 WAL 记录), %d 个文件 %d 个节点 %d 个会话%n",
+                    restoreMs, result.getReplayed(), restored.size(), restored.nodeCount(), result.getSessions().size());
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * 逐个节点整体注册，返回节点/秒
+     */
+    private static double load(FileIndex index, List<List<FileRegister>> batches, int nodeCount) {
+        long start = System.nanoTime();
+        for (int n = 0; n < nodeCount; n++) {
+            index.replaceFiles("node-" + n, batches.get(n));
+        }
+        return nodeCount / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static List<FileRegister> registers(String[] hashes, Random random, int count) {
+        List<FileRegister> registers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            FileRegister register = new FileRegister();
+            int file = random.nextInt(FILE_COUNT);
+            register.setHash(hashes[file]);
+            register.setFileName("file-" + file + ".bin");
+            register.setFileSize((long) file * 1024);
+            registers.add(register);
+        }
+        return registers;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            stream.forEach(files::add);
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,151 @@
+package com.sumu.japdemo.bench;
+
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.entity.NodeInfo;
+import com.sumu.japdemo.store.CompactMysqlIndexStoreTest;
+import com.sumu.japdemo.store.EmbeddedIndexStore;
+import com.sumu.japdemo.store.IndexStore;
+import com.sumu.japdemo.store.MysqlIndexStoreTest;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 各 IndexStore 实现在服务实际调用路径上的单次延迟 (p50/p99):
+ * 节点上线、整体注册、增量注册、心跳批量写回、node_count 批量写回、批量注销。
+ * 运行: java ... IndexStoreBenchmark [embedded|mysql|mysql-compact|all] [节点数]
+ * mysql / mysql-compact 使用 application.yaml 中的数据源，会写入并注销随机前缀的测试节点，只应对测试库运行；
+ * mysql-compact 需要先执行 db/schema-compact.sql。行大小对比见迁移任务打印的表统计
+ */
+public class IndexStoreBenchmark {
+
+    private static final int FILES_PER_NODE = 200;
+
+    private static final int DELTA_SIZE = 5;
+
+    private static final int BATCH = 1000;
+
+    public static void main(String[] args) {
+        String mode = args.length > 0 ? args[0] : "embedded";
+        int nodeCount = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+
+        System.out.printf("%-14s %-18s %12s %12s%n", "store", "operation", "p50 us", "p99 us");
+        if ("embedded".equals(mode) || "all".equals(mode)) {
+            run("embedded", new EmbeddedIndexStore(), nodeCount);
+        }
+        if ("mysql".equals(mode) || "all".equals(mode)) {
+            runSpring("mysql", MysqlIndexStoreTest.StoreConfig.class, nodeCount);
+        }
+        if ("mysql-compact".equals(mode) || "all".equals(mode)) {
+            runSpring("mysql-compact", CompactMysqlIndexStoreTest.StoreConfig.class, nodeCount);
+        }
+    }
+
+    private static void runSpring(String type, Class<?> config, int nodeCount) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(config)
+                .web(WebApplicationType.NONE)
+                .properties("p2p.store.type=" + type)
+                .run()) {
+            run(type, context.getBean(IndexStore.class), nodeCount);
+        }
+    }
+
+    private static void run(String name, IndexStore store, int nodeCount) {
+        Random random = new Random(5);
+        String prefix = UUID.randomUUID().toString().substring(0, 8);
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < nodeCount * 10; i++) {
+            hashes.add(String.format("%s%056x", prefix, i));
+        }
+        List<String> nodeIds = new ArrayList<>(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIds.add(prefix + "-" + i);
+        }
+
+        long[] save = new long[nodeCount];
+        long[] replace = new long[nodeCount];
+        long[] delta = new long[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            String nodeId = nodeIds.get(i);
+            long start = System.nanoTime();
+            store.saveNode(nodeId, "10.0.0.1");
+            save[i] = System.nanoTime() - start;
+
+            List<String> files = sample(hashes, random, FILES_PER_NODE);
+            start = System.nanoTime();
+            store.replaceNodeFiles(nodeId, files);
+            replace[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            store.updateNodeFiles(nodeId, sample(hashes, random, DELTA_SIZE), files.subList(0, DELTA_SIZE));
+            delta[i] = System.nanoTime() - start;
+        }
+
+        int batches = Math.max(1, nodeCount / BATCH);
+        long[] heartbeat = new long[batches];
+        long[] counts = new long[batches];
+        long[] remove = new long[batches];
+        for (int b = 0; b < batches; b++) {
+            List<String> chunk = nodeIds.subList(b * BATCH, Math.min(nodeCount, (b + 1) * BATCH));
+            List<NodeInfo> heartbeats = new ArrayList<>(chunk.size());
+            List<FileInfo> files = new ArrayList<>(chunk.size());
+            for (String nodeId : chunk) {
+                NodeInfo nodeInfo = new NodeInfo();
+                nodeInfo.setNodeId(nodeId);
+                nodeInfo.setLastHeartbeat(LocalDateTime.now());
+                heartbeats.add(nodeInfo);
+
+                FileInfo fileInfo = new FileInfo();
+                fileInfo.setFileHash(hashes.get(random.nextInt(hashes.size())));
+                fileInfo.setFileName("file.bin");
+                fileInfo.setFileSize(1024L);
+                fileInfo.setNodeCount(1 + random.nextInt(10));
+                files.add(fileInfo);
+            }
+            long start = System.nanoTime();
+            store.updateHeartbeats(heartbeats);
+            heartbeat[b] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            store.saveFileCounts(files, Collections.emptyList());
+            counts[b] = System.nanoTime() - start;
+        }
+        for (int b = 0; b < batches; b++) {
+            List<String> chunk = nodeIds.subList(b * BATCH, Math.min(nodeCount, (b + 1) * BATCH));
+            long start = System.nanoTime();
+            store.removeNodes(chunk);
+            remove[b] = System.nanoTime() - start;
+        }
+        store.saveFileCounts(Collections.emptyList(), hashes);
+
+        print(name, "saveNode", save);
+        print(name, "replace x" + FILES_PER_NODE, replace);
+        print(name, "delta +-" + DELTA_SIZE, delta);
+        print(name, "heartbeats x" + BATCH, heartbeat);
+        print(name, "fileCounts x" + BATCH, counts);
+        print(name, "removeNodes x" + BATCH, remove);
+    }
+
+    private static List<String> sample(List<String> hashes, Random random, int count) {
+        List<String> sample = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sample.add(hashes.get(random.nextInt(hashes.size())));
+        }
+        return sample;
+    }
+
+    private static void print(String store, String operation, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-14s %-18s %12.1f %12.1f%n", store, operation,
+                sorted[sorted.length / 2] / 1e3, sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1e3);
+    }
+}
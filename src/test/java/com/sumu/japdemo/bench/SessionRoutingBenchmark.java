@@ -0,0 +1,91 @@
+package com.sumu.japdemo.bench;
+
+import com.corundumstudio.socketio.SocketIOClient;
+import com.sumu.japdemo.socketio.SessionRoutingTable;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 信令转发查找目标连接的开销: 旧的 getAllClients() 线性扫描 vs SessionRoutingTable。
+ * 直接运行 main 即可，不依赖 Spring 上下文和网络
+ */
+public class SessionRoutingBenchmark {
+
+    private static final int[] CLIENT_COUNTS = {1_000, 10_000, 100_000};
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        System.out.printf("%-10s %16s %16s%n", "clients", "scan ns/op", "table ns/op");
+        for (int clientCount : CLIENT_COUNTS) {
+            List<SocketIOClient> clients = new ArrayList<>(clientCount);
+            SessionRoutingTable table = new SessionRoutingTable();
+            String[] nodeIds = new String[clientCount];
+            for (int i = 0; i < clientCount; i++) {
+                SocketIOClient client = fakeClient(UUID.randomUUID());
+                nodeIds[i] = client.getSessionId().toString();
+                clients.add(client);
+                table.bind(nodeIds[i], client);
+            }
+
+            // 扫描的单次开销与连接数成正比，按连接数缩减次数使每轮耗时相近
+            int scanOps = Math.max(20, 20_000_000 / clientCount);
+            int tableOps = 2_000_000;
+            measure(() -> scan(clients, randomId(nodeIds)), scanOps);
+            double scanNs = measure(() -> scan(clients, randomId(nodeIds)), scanOps);
+            measure(() -> table.lookup(randomId(nodeIds)), tableOps);
+            double tableNs = measure(() -> table.lookup(randomId(nodeIds)), tableOps);
+            System.out.printf("%-10d %16.1f %16.1f%n", clientCount, scanNs, tableNs);
+        }
+    }
+
+    private static SocketIOClient scan(List<SocketIOClient> clients, String sessionId) {
+        for (SocketIOClient client : clients) {
+            if (client.getSessionId().toString().equals(sessionId)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    private static String randomId(String[] nodeIds) {
+        return nodeIds[ThreadLocalRandom.current().nextInt(nodeIds.length)];
+    }
+
+    private static double measure(Runnable op, int ops) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            op.run();
+        }
+        sink = op;
+        return (System.nanoTime() - start) / (double) ops;
+    }
+
+    private static SocketIOClient fakeClient(UUID sessionId) {
+        Map<String, Object> store = new HashMap<>();
+        return (SocketIOClient) Proxy.newProxyInstance(SocketIOClient.class.getClassLoader(),
+                new Class<?>[]{SocketIOClient.class}, (proxy, method, methodArgs) -> {
+                    switch (method.getName()) {
+                        case "getSessionId":
+                            return sessionId;
+                        case "set":
+                            store.put((String) methodArgs[0], methodArgs[1]);
+                            return null;
+                        case "get":
+                            return store.get((String) methodArgs[0]);
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == methodArgs[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
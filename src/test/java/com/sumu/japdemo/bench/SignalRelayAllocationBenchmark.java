@@ -0,0 +1,91 @@
+package com.sumu.japdemo.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumu.japdemo.entity.dto.WebRtcSignal;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 每转发一条 webrtc-signal 的堆分配量: 旧的 Map 解码 + HashMap 重组 vs RawJson 原样转发。
+ * 只测 JSON 解码/编码这一段，两种方式写入同一个复用的输出缓冲区。
+ * 需要 HotSpot 的 com.sun.management.ThreadMXBean，直接运行 main 即可
+ */
+public class SignalRelayAllocationBenchmark {
+
+    private static final String INBOUND = "{\"targetUserId\":\"5b0e6f0c-7c1f-4a3e-9d55-0f0d3b7a2c11\","
+            + "\"signal\":{\"type\":\"candidate\",\"candidate\":{\"candidate\":"
+            + "\"candidate:842163049 1 udp 1677729535 203.0.113.7 61523 typ srflx raddr 192.168.1.23 rport 61523 "
+            + "generation 0 ufrag Xq3v network-cost 999\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0,"
+            + "\"usernameFragment\":\"Xq3v\"}}}";
+
+    private static final String FROM_USER_ID = "9d2c4b71-3f0a-4c8e-8b7e-1a2b3c4d5e6f";
+
+    private static final int WARMUP = 200_000;
+
+    private static final int OPS = 1_000_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        byte[] inbound = INBOUND.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+        Relay mapRelay = () -> {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> data = mapper.readValue(inbound, Map.class);
+            Map<String, Object> forwardData = new HashMap<>();
+            forwardData.put("fromUserId", FROM_USER_ID);
+            forwardData.put("signal", data.get("signal"));
+            out.reset();
+            mapper.writeValue(out, forwardData);
+        };
+        Relay rawRelay = () -> {
+            WebRtcSignal signal = mapper.readValue(inbound, WebRtcSignal.class);
+            signal.setTargetUserId(null);
+            signal.setFromUserId(FROM_USER_ID);
+            out.reset();
+            mapper.writeValue(out, signal);
+        };
+
+        mapRelay.run();
+        String mapOutput = out.toString("UTF-8");
+        rawRelay.run();
+        String rawOutput = out.toString("UTF-8");
+        if (!mapper.readTree(mapOutput).equals(mapper.readTree(rawOutput))) {
+            throw new IllegalStateException("两种转发方式的输出不一致:\n" + mapOutput + "\n" + rawOutput);
+        }
+
+        double mapBytes = measure(mapRelay);
+        double rawBytes = measure(rawRelay);
+        System.out.printf("Map 解码转发:     %8.1f bytes/signal%n", mapBytes);
+        System.out.printf("RawJson 原样转发: %8.1f bytes/signal%n", rawBytes);
+        System.out.printf("节省:             %8.1f bytes/signal (%.0f%%)%n",
+                mapBytes - rawBytes, (mapBytes - rawBytes) * 100 / mapBytes);
+    }
+
+    private static double measure(Relay relay) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            relay.run();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < OPS; i++) {
+            relay.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        sink = relay;
+        return allocated / (double) OPS;
+    }
+
+    @FunctionalInterface
+    private interface Relay {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,139 @@
+package com.sumu.japdemo.bench;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sumu.japdemo.entity.dto.DownloadResult;
+import com.sumu.japdemo.entity.dto.FileRegister;
+import com.sumu.japdemo.entity.dto.FileSearchResult;
+import com.sumu.japdemo.utils.BinaryWireCodec;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * JSON 与 BinaryWireCodec 的线上字节数和编解码 CPU (每 10k 条):
+ * register-files 的服务端解码 (JSON 为 List&lt;Map&gt; + 逐字段转换，与 onRegisterFiles 相同)，
+ * search-results 和 download-nodes-found 的服务端编码。
+ * 字节数为事件参数本身，不含 Socket.IO 包头。需要 HotSpot 的 com.sun.management.ThreadMXBean
+ */
+public class WireEncodingBenchmark {
+
+    private static final int ENTRIES = 10_000;
+
+    private static final int NODES_PER_RESULT = 5;
+
+    private static final int WARMUP = 30;
+
+    private static final int ROUNDS = 100;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(11);
+        List<String> nodePool = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            nodePool.add(UUID.randomUUID().toString());
+        }
+        List<FileRegister> registers = new ArrayList<>(ENTRIES);
+        List<FileSearchResult> results = new ArrayList<>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            FileRegister register = new FileRegister();
+            register.setHash(String.format("%016x%016x%016x%016x",
+                    random.nextLong(), random.nextLong(), random.nextLong(), random.nextLong()));
+            register.setFileName("album-" + (i / 12) + "/" + String.format("%02d", i % 12) + " - track.flac");
+            register.setFileSize(1_000_000L + random.nextInt(50_000_000));
+            registers.add(register);
+
+            FileSearchResult result = new FileSearchResult();
+            result.setHash(register.getHash());
+            result.setFileName(register.getFileName());
+            result.setFileSize(register.getFileSize());
+            List<String> nodes = new ArrayList<>(NODES_PER_RESULT);
+            for (int n = 0; n < NODES_PER_RESULT; n++) {
+                nodes.add(nodePool.get(random.nextInt(nodePool.size())));
+            }
+            result.setNodes(nodes);
+            result.setNodeCount(nodes.size());
+            result.setIsExactMatch(false);
+            results.add(result);
+        }
+        DownloadResult download = new DownloadResult();
+        download.setFileHash(registers.get(0).getHash());
+        download.setFileName(registers.get(0).getFileName());
+        download.setFileSize(registers.get(0).getFileSize());
+        download.setNodes(new ArrayList<>(nodePool.subList(0, 100)));
+        download.setNodeCount(100);
+
+        byte[] registerJson = MAPPER.writeValueAsBytes(registers);
+        byte[] registerBinary = BinaryWireCodec.encodeRegisters(registers);
+        if (BinaryWireCodec.decodeRegisters(registerBinary).size() != ENTRIES) {
+            throw new IllegalStateException("二进制注册数据解码结果不一致");
+        }
+
+        System.out.printf("%-34s %12s %12s %14s%n", "payload (10k 条)", "bytes", "us/10k", "alloc KB/10k");
+        print("register-files 解码 JSON", registerJson.length,
+                measure(() -> sink = decodeJson(registerJson)));
+        print("register-files 解码 binary", registerBinary.length,
+                measure(() -> sink = BinaryWireCodec.decodeRegisters(registerBinary)));
+        print("search-results 编码 JSON", MAPPER.writeValueAsBytes(results).length,
+                measure(() -> sink = MAPPER.writeValueAsBytes(results)));
+        print("search-results 编码 binary", BinaryWireCodec.encodeSearchResults(results).length,
+                measure(() -> sink = BinaryWireCodec.encodeSearchResults(results)));
+        System.out.printf("%-34s %12d%n", "download-nodes-found JSON (100 节点)", MAPPER.writeValueAsBytes(download).length);
+        System.out.printf("%-34s %12d%n", "download-nodes-found binary", BinaryWireCodec.encodeDownloadResult(download).length);
+    }
+
+    private static List<FileRegister> decodeJson(byte[] json) throws Exception {
+        List<Map<String, Object>> files = MAPPER.readValue(json, new TypeReference<List<Map<String, Object>>>() {
+        });
+        List<FileRegister> fileList = new ArrayList<>();
+        for (Map<String, Object> file : files) {
+            FileRegister fr = new FileRegister();
+            fr.setHash(String.valueOf(file.get("hash")));
+            fr.setFileName(String.valueOf(file.get("fileName")));
+            Object fileSize = file.get("fileSize");
+            if (fileSize instanceof Number) {
+                fr.setFileSize(((Number) fileSize).longValue());
+            } else {
+                fr.setFileSize(Long.parseLong(String.valueOf(fileSize)));
+            }
+            fileList.add(fr);
+        }
+        return fileList;
+    }
+
+    /**
+     * 返回 {每轮纳秒, 每轮分配字节}
+     */
+    private static long[] measure(Task task) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            task.run();
+        }
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        return new long[]{elapsed / ROUNDS, allocated / ROUNDS};
+    }
+
+    private static void print(String name, int bytes, long[] result) {
+        System.out.printf("%-34s %12d %12.1f %14.1f%n", name, bytes, result[0] / 1e3, result[1] / 1024.0);
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,33 @@
+package com.sumu.japdemo.store;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 与 MysqlIndexStoreTest 相同，另外需要先执行 db/schema-compact.sql:
+ * mvn test -Dp2p.test.mysql=true
+ */
+@SpringBootTest(classes = CompactMysqlIndexStoreTest.StoreConfig.class, properties = "p2p.store.type=mysql-compact")
+@EnabledIfSystemProperty(named = "p2p.test.mysql", matches = "true")
+public class CompactMysqlIndexStoreTest extends IndexStoreConformanceTest {
+
+    @Autowired
+    private IndexStore compactMysqlIndexStore;
+
+    @Override
+    protected IndexStore createStore() {
+        return compactMysqlIndexStore;
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @MapperScan("com.sumu.japdemo.mapper")
+    @Import(CompactMysqlIndexStore.class)
+    public static class StoreConfig {
+    }
+}
@@ -0,0 +1,9 @@
+package com.sumu.japdemo.store;
+
+class EmbeddedIndexStoreTest extends IndexStoreConformanceTest {
+
+    @Override
+    protected IndexStore createStore() {
+        return new EmbeddedIndexStore();
+    }
+}
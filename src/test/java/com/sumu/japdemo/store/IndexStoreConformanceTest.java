@@ -0,0 +1,214 @@
+package com.sumu.japdemo.store;
+
+import com.sumu.japdemo.entity.FileInfo;
+import com.sumu.japdemo.entity.NodeInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 所有 IndexStore 实现共用的行为约定。每个用例使用随机前缀的节点和哈希，可以在非空的库上运行
+ */
+abstract class IndexStoreConformanceTest {
+
+    protected IndexStore store;
+
+    private String prefix;
+
+    protected abstract IndexStore createStore();
+
+    @BeforeEach
+    void setUp() {
+        store = createStore();
+        prefix = UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Test
+    void saveNodeCreatesThenUpdates() {
+        String nodeId = node("a");
+        assertNull(store.getNode(nodeId));
+
+        store.saveNode(nodeId, "10.0.0.1");
+        NodeInfo created = store.getNode(nodeId);
+        assertNotNull(created);
+        assertEquals("10.0.0.1", created.getIpAddress());
+        assertTrue(created.getActive());
+        assertNotNull(created.getCreateTime());
+
+        store.removeNodes(Collections.singletonList(nodeId));
+        assertFalse(store.getNode(nodeId).getActive());
+
+        store.saveNode(nodeId, "10.0.0.2");
+        NodeInfo updated = store.getNode(nodeId);
+        assertEquals(created.getId(), updated.getId());
+        assertEquals("10.0.0.2", updated.getIpAddress());
+        assertTrue(updated.getActive());
+    }
+
+    @Test
+    void replaceNodeFilesWritesOnlyTheDifference() {
+        String nodeId = node("a");
+        store.saveNode(nodeId, "10.0.0.1");
+
+        store.replaceNodeFiles(nodeId, Arrays.asList(hash(1), hash(2), hash(2), hash(3)));
+        assertEquals(set(hash(1), hash(2), hash(3)), new HashSet<>(store.getFileHashes(nodeId)));
+
+        store.replaceNodeFiles(nodeId, Arrays.asList(hash(3), hash(4)));
+        assertEquals(set(hash(3), hash(4)), new HashSet<>(store.getFileHashes(nodeId)));
+
+        store.replaceNodeFiles(nodeId, Collections.emptyList());
+        assertTrue(store.getFileHashes(nodeId).isEmpty());
+    }
+
+    @Test
+    void updateNodeFilesIgnoresExistingAndMissing() {
+        String nodeId = node("a");
+        store.saveNode(nodeId, "10.0.0.1");
+        store.replaceNodeFiles(nodeId, Arrays.asList(hash(1), hash(2)));
+
+        store.updateNodeFiles(nodeId, Arrays.asList(hash(2), hash(3)), Arrays.asList(hash(1), hash(9)));
+        assertEquals(set(hash(2), hash(3)), new HashSet<>(store.getFileHashes(nodeId)));
+
+        store.updateNodeFiles(nodeId, Collections.emptyList(), Collections.emptyList());
+        assertEquals(set(hash(2), hash(3)), new HashSet<>(store.getFileHashes(nodeId)));
+    }
+
+    @Test
+    void removeNodesDeletesFilesAndDeactivates() {
+        String a = node("a");
+        String b = node("b");
+        store.saveNode(a, "10.0.0.1");
+        store.saveNode(b, "10.0.0.2");
+        store.replaceNodeFiles(a, Arrays.asList(hash(1), hash(2)));
+        store.replaceNodeFiles(b, Collections.singletonList(hash(1)));
+
+        store.removeNodes(Collections.singletonList(a));
+        assertTrue(store.getFileHashes(a).isEmpty());
+        assertFalse(store.getNode(a).getActive());
+        assertEquals(Collections.singletonList(hash(1)), store.getFileHashes(b));
+        assertTrue(store.getNode(b).getActive());
+    }
+
+    @Test
+    void updateHeartbeatsSkipsUnknownNodes() {
+        String nodeId = node("a");
+        store.saveNode(nodeId, "10.0.0.1");
+        LocalDateTime heartbeat = LocalDateTime.of(2030, 1, 2, 3, 4, 5);
+
+        store.updateHeartbeats(Arrays.asList(heartbeat(nodeId, heartbeat), heartbeat(node("missing"), heartbeat)));
+        assertEquals(heartbeat, store.getNode(nodeId).getLastHeartbeat());
+        assertNull(store.getNode(node("missing")));
+    }
+
+    @Test
+    void saveFileCountsKeepsFirstMetadata() {
+        store.saveFileCounts(Collections.singletonList(file(hash(1), "first.bin", 10L, 1)), Collections.emptyList());
+        store.saveFileCounts(Arrays.asList(file(hash(1), "second.bin", 20L, 3), file(hash(2), "other.bin", 5L, 1)),
+                Collections.emptyList());
+
+        FileInfo first = store.getFile(hash(1));
+        assertEquals("first.bin", first.getFileName());
+        assertEquals(10L, first.getFileSize());
+        assertEquals(3, first.getNodeCount());
+
+        store.saveFileCounts(Collections.emptyList(), Collections.singletonList(hash(2)));
+        assertNull(store.getFile(hash(2)));
+        assertNotNull(store.getFile(hash(1)));
+    }
+
+    @Test
+    void forEachActiveFileSkipsInactiveNodesAndUnknownFiles() {
+        String a = node("a");
+        String b = node("b");
+        store.saveNode(a, "10.0.0.1");
+        store.saveNode(b, "10.0.0.2");
+        store.saveFileCounts(Arrays.asList(file(hash(1), "one.bin", 1L, 2), file(hash(2), "two.bin", 2L, 1)),
+                Collections.emptyList());
+        store.replaceNodeFiles(a, Arrays.asList(hash(1), hash(2), hash(3)));
+        store.replaceNodeFiles(b, Collections.singletonList(hash(1)));
+        store.removeNodes(Collections.singletonList(b));
+
+        Map<String, Set<String>> loaded = new HashMap<>();
+        store.forEachActiveFile((nodeId, fileInfo) -> {
+            if (nodeId.startsWith(prefix)) {
+                loaded.computeIfAbsent(nodeId, key -> new HashSet<>()).add(fileInfo.getFileHash());
+            }
+        });
+        Map<String, Set<String>> expected = new HashMap<>();
+        expected.put(a, set(hash(1), hash(2)));
+        assertEquals(expected, loaded);
+    }
+
+    @Test
+    void reconcileRemovesLeftoversOfInactiveNodes() {
+        String a = node("a");
+        String b = node("b");
+        store.saveNode(a, "10.0.0.1");
+        store.saveNode(b, "10.0.0.2");
+        store.replaceNodeFiles(a, Arrays.asList(hash(1), hash(2)));
+        store.replaceNodeFiles(b, Collections.singletonList(hash(1)));
+        store.saveFileCounts(Arrays.asList(file(hash(1), "one.bin", 1L, 2), file(hash(2), "two.bin", 2L, 1),
+                file(hash(3), "three.bin", 3L, 5)), Collections.emptyList());
+
+        assertTrue(store.deactivateAllNodes() >= 2);
+        assertFalse(store.getNode(a).getActive());
+        // 模拟新一轮运行中 b 重新上线
+        store.saveNode(b, "10.0.0.2");
+
+        IndexStore.ReconcileResult result = store.reconcile();
+        assertTrue(result.getDeletedPairs() >= 2);
+        assertTrue(result.getDeletedFiles() >= 2);
+        assertTrue(store.getFileHashes(a).isEmpty());
+        assertEquals(Collections.singletonList(hash(1)), store.getFileHashes(b));
+        assertEquals(1, store.getFile(hash(1)).getNodeCount());
+        assertNull(store.getFile(hash(2)));
+        assertNull(store.getFile(hash(3)));
+    }
+
+    private String node(String name) {
+        return prefix + "-" + name;
+    }
+
+    private String hash(int n) {
+        StringBuilder hash = new StringBuilder(prefix);
+        String suffix = Integer.toHexString(n);
+        while (hash.length() + suffix.length() < 64) {
+            hash.append('0');
+        }
+        return hash.append(suffix).toString();
+    }
+
+    private static NodeInfo heartbeat(String nodeId, LocalDateTime time) {
+        NodeInfo nodeInfo = new NodeInfo();
+        nodeInfo.setNodeId(nodeId);
+        nodeInfo.setLastHeartbeat(time);
+        return nodeInfo;
+    }
+
+    private static FileInfo file(String fileHash, String fileName, Long fileSize, int nodeCount) {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setFileHash(fileHash);
+        fileInfo.setFileName(fileName);
+        fileInfo.setFileSize(fileSize);
+        fileInfo.setNodeCount(nodeCount);
+        return fileInfo;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,36 @@
+package com.sumu.japdemo.store;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.mybatis.spring.annotation.MapperScan;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * 需要 application.yaml 中配置的 MySQL，且会把库中全部节点标记为离线，只应对测试库运行:
+ * mvn test -Dp2p.test.mysql=true
+ */
+@SpringBootTest(classes = MysqlIndexStoreTest.StoreConfig.class, properties = "p2p.store.type=mysql")
+@EnabledIfSystemProperty(named = "p2p.test.mysql", matches = "true")
+public class MysqlIndexStoreTest extends IndexStoreConformanceTest {
+
+    @Autowired
+    private IndexStore mysqlIndexStore;
+
+    @Override
+    protected IndexStore createStore() {
+        return mysqlIndexStore;
+    }
+
+    /**
+     * 只启动数据源、MyBatis-Plus 和 MysqlIndexStore，不启动 Socket.IO 和定时任务
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @MapperScan("com.sumu.japdemo.mapper")
+    @Import(MysqlIndexStore.class)
+    public static class StoreConfig {
+    }
+}